@@ -0,0 +1,53 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.dianping.logan.CLoganProtocol
+import com.dianping.logan.LoganProtocolHandler
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.File
+
+/**
+ * 在设备上对比底层库与JVM实现的写入速度
+ * --
+ * 底层库在进程中只能初始化一次，因此两种实现分别写入各自的目录，底层库只测试一轮。
+ */
+@RunWith(AndroidJUnit4::class)
+class LoganWriteBenchmark {
+
+    private val key = "0123456789012345"
+
+    private val root = File(InstrumentationRegistry.getInstrumentation().targetContext.cacheDir, "logan_benchmark")
+
+    @After
+    fun clean() {
+        root.deleteRecursively()
+    }
+
+    private fun bench(name: String, protocol: LoganProtocolHandler): Long {
+        protocol.clogan_init(File(root, "cache-$name").absolutePath, File(root, name).absolutePath, Int.MAX_VALUE, key, key)
+        protocol.clogan_open("1640275200000")
+        val count = 50_000
+        val log = "用户123在页面Home点击了按钮Submit，耗时45ms，请求参数：{id=9527, from=push}"
+        repeat(2000) { protocol.clogan_write(101, log, it.toLong(), "main", 1, 1) }
+        val begin = System.nanoTime()
+        repeat(count) { protocol.clogan_write(101, log, it.toLong(), "main", 1, 1) }
+        protocol.clogan_flush()
+        if (protocol is JvmLoganProtocol) protocol.awaitSealed(60_000)
+        val nanos = System.nanoTime() - begin
+        val size = File(File(root, name), "1640275200000").length()
+        println("${name}写入吞吐量：${count * 1_000_000_000L / nanos}条/秒，平均${nanos / count}ns/条，文件${size / 1024}KB")
+        return nanos
+    }
+
+    @Test
+    fun nativeAndJvmWriteThroughput() {
+        assertTrue("设备上应能装载底层库", CLoganProtocol.isCloganSuccess())
+        val native = bench("底层库", CLoganProtocol.newInstance())
+        val jvm = bench("JVM实现", JvmLoganProtocol())
+        println("JVM实现耗时为底层库的${jvm * 100 / native}%")
+    }
+}
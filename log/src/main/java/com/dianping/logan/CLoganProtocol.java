@@ -2,25 +2,31 @@ package com.dianping.logan;
 
 import android.util.Log;
 
-public class CLoganProtocol {
+public class CLoganProtocol implements LoganProtocolHandler {
 
     private static CLoganProtocol sCLoganProtocol;
-    private static boolean sIsCloganOk;
+    private static volatile Boolean sIsCloganOk;
 
     private static final String TAG = "CLoganProtocol";
 
-    static {
-        try {
-            System.loadLibrary("logan");
-            sIsCloganOk = true;
-            Log.d(TAG, "C库已装载完成");
-        } catch (Throwable e) {
-            sIsCloganOk = false;
-            Log.e(TAG, "C库装载失败。", e);
-        }
-    }
-
+    /**
+     * C库是否装载成功。C库在第一次调用时装载，而不是在类加载时，请在日志写入线程中调用。
+     */
     public static boolean isCloganSuccess() {
+        if (null == sIsCloganOk) {
+            synchronized (CLoganProtocol.class) {
+                if (null == sIsCloganOk) {
+                    try {
+                        System.loadLibrary("logan");
+                        sIsCloganOk = true;
+                        Log.d(TAG, "C库已装载完成");
+                    } catch (Throwable e) {
+                        sIsCloganOk = false;
+                        Log.e(TAG, "C库装载失败。", e);
+                    }
+                }
+            }
+        }
         return sIsCloganOk;
     }
 
@@ -46,6 +52,7 @@ public class CLoganProtocol {
      * @return 结果码
      * @see ConstantCode
      */
+    @Override
     public native int clogan_init(String cache_path, String dir_path, int max_file, String encrypt_key_16, String encrypt_iv_16);
 
     /**
@@ -55,6 +62,7 @@ public class CLoganProtocol {
      * @return 结果码
      * @see ConstantCode
      */
+    @Override
     public native int clogan_open(String file_name);
 
     /**
@@ -62,6 +70,7 @@ public class CLoganProtocol {
      *
      * @param is_debug debug 1为开启 0为关闭 默认为0
      */
+    @Override
     public native void clogan_debug(boolean is_debug);
 
     /**
@@ -76,10 +85,12 @@ public class CLoganProtocol {
      * @return 结果码
      * @see ConstantCode
      */
+    @Override
     public native int clogan_write(int flag, String log, long local_time, String thread_name, long thread_id, int is_main);
 
     /**
      * 强制写入文件。建议在崩溃或者退出程序的时候调用
      */
+    @Override
     public native void clogan_flush();
 }
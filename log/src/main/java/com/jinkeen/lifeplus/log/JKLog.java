@@ -7,12 +7,15 @@ import android.content.ServiceConnection;
 import android.os.IBinder;
 
 import com.jinkeen.lifeplus.log.listener.OnLogProtocolStatusListener;
+import com.jinkeen.lifeplus.log.nativ.ClosedLogWriter;
+import com.jinkeen.lifeplus.log.nativ.CrashHandler;
+import com.jinkeen.lifeplus.log.nativ.LogCaptureBuffer;
 import com.jinkeen.lifeplus.log.nativ.LogConfig;
+import com.jinkeen.lifeplus.log.nativ.LogControlCenter;
 import com.jinkeen.lifeplus.log.nativ.LogControlCenterService;
+import com.jinkeen.lifeplus.log.nativ.LogWriter;
+import com.jinkeen.lifeplus.log.parser.LogKeyProvider;
 
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Locale;
@@ -28,11 +31,55 @@ import java.util.Objects;
  */
 public final class JKLog {
 
-    private static LogControlCenterService sLogControlCenter;
+    private static volatile LogControlCenter sLogControlCenter;
     private static ServiceConnection connection;
 
+    // 首次初始化完成之前，记录日志的调用暂存在这里
+    private static volatile LogCaptureBuffer sCapture = new LogCaptureBuffer();
+
+    // 停止之后，仍在运行的线程记录的日志在这里丢弃并计数
+    private static final ClosedLogWriter sClosed = new ClosedLogWriter();
+
+    private static LogWriter writer() {
+        final LogControlCenter center = sLogControlCenter;
+        if (null != center) return center;
+        final LogCaptureBuffer capture = sCapture;
+        if (null != capture) return capture;
+        // 暂存区在日志控制器发布之后才被清除，此时再次读取即可得到日志控制器
+        final LogControlCenter published = sLogControlCenter;
+        if (null != published) return published;
+        // 暂存区只在初始化之后被清除，此时日志控制器为空说明已经停止
+        return sClosed;
+    }
+
+    // 转交初始化之前暂存的日志，之后的调用直接由日志控制器处理
+    private static void ready(LogControlCenter center) {
+        final LogCaptureBuffer capture = sCapture;
+        // 转交后暂存区将调用转发给日志控制器，先发布日志控制器再清除暂存区，任何时刻都有可用的写入对象
+        if (null != capture) capture.replayTo(center);
+        sLogControlCenter = center;
+        sCapture = null;
+    }
+
     /**
      * （必须）初始化，否则后续所有方法就无法执行。
+     * <br/>
+     * 在当前进程中直接创建日志写入线程，方法返回后即可记录日志。底层库在写入线程中装载，不占用调用者的线程。
+     * 首次初始化之前记录的日志会被暂存，初始化后按顺序写入。重复调用时以第一次为准。
+     *
+     * @param config 日志基本配置信息
+     */
+    public static synchronized void init(LogConfig config) {
+        if (null != sLogControlCenter) return;
+        final LogControlCenter center = new LogControlCenter(config);
+        center.start();
+        ready(center);
+    }
+
+    /**
+     * 以绑定服务的方式初始化，日志写入由{@link LogControlCenterService}托管。
+     * <br/>
+     * <i>服务绑定成功之前记录的日志会被暂存，调用其他方法将抛出异常，不需要服务时请使用{@link #init(LogConfig)}。</i>
      *
      * @param context 当前运行时上下文
      * @param config  日志基本配置信息
@@ -44,7 +91,7 @@ public final class JKLog {
             @Override
             public void onServiceConnected(ComponentName name, IBinder service) {
                 if (service instanceof LogControlCenterService.ControlCenterBinder)
-                    sLogControlCenter = ((LogControlCenterService.ControlCenterBinder) service).getService();
+                    ready(((LogControlCenterService.ControlCenterBinder) service).getControlCenter());
             }
 
             @Override
@@ -62,8 +109,117 @@ public final class JKLog {
      * @param log  具体日志内容。
      */
     public static void w(int type, String log) {
+        writer().write(log, type);
+    }
+
+    /**
+     * 在本地记录一条延迟格式化的日志，格式化工作将在日志写入线程中完成，调用线程只负责记录参数。
+     * <br/>
+     * 格式中的每个<code>{}</code>按顺序替换为一个参数，如：<code>JKLog.w(101, "用户{}耗时{}ms", user, cost)</code>。
+     * <i>参数对象会在稍后被转换为字符串，请勿传入之后会被修改的对象。</i>
+     *
+     * @param type    日志类型，由记录者自行定义。<i>每次只能记录一个类型，不支持多个</i>
+     * @param pattern 日志格式
+     * @param arg     参数
+     */
+    public static void w(int type, String pattern, Object arg) {
+        writer().write(type, pattern, arg);
+    }
+
+    /**
+     * @see #w(int, String, Object)
+     */
+    public static void w(int type, String pattern, long arg) {
+        writer().write(type, pattern, arg);
+    }
+
+    /**
+     * @see #w(int, String, Object)
+     */
+    public static void w(int type, String pattern, Object arg1, Object arg2) {
+        writer().write(type, pattern, arg1, arg2);
+    }
+
+    /**
+     * @see #w(int, String, Object)
+     */
+    public static void w(int type, String pattern, Object arg1, long arg2) {
+        writer().write(type, pattern, arg1, arg2);
+    }
+
+    /**
+     * @see #w(int, String, Object)
+     */
+    public static void w(int type, String pattern, long arg1, long arg2) {
+        writer().write(type, pattern, arg1, arg2);
+    }
+
+    /**
+     * @see #w(int, String, Object)
+     */
+    public static void w(int type, String pattern, Object... args) {
+        final LogWriter writer = writer();
+        if (null == args) writer.write(type, pattern, (Object) null);
+        else writer.write(type, pattern, args);
+    }
+
+    /**
+     * 在本地记录一条延迟生成的日志，<code>supplier</code>将在日志写入线程中被调用。
+     *
+     * @param type     日志类型，由记录者自行定义。<i>每次只能记录一个类型，不支持多个</i>
+     * @param supplier 日志内容的生成者
+     */
+    public static void w(int type, LogSupplier supplier) {
+        writer().write(type, supplier);
+    }
+
+    /**
+     * 设置日志类型的限流，可在运行时随时修改。超出的日志将被丢弃，并定期按类型记录一条被丢弃数量的摘要。
+     *
+     * @param type      日志类型
+     * @param perSecond 每秒最多记录的日志条数，小于等于0表示不限流
+     * @see LogConfig#getMRateLimits()
+     */
+    public static void setRateLimit(int type, int perSecond) {
         if (null == sLogControlCenter) throw new NullPointerException("请先初始化JKLog");
-        sLogControlCenter.write(log, type);
+        sLogControlCenter.setRateLimit(type, perSecond);
+    }
+
+    /**
+     * 设置日志类型的采样比例，可在运行时随时修改。未被采样的日志将被丢弃，并定期按类型记录一条被丢弃数量的摘要。
+     *
+     * @param type 日志类型
+     * @param rate 保留日志的比例，大于等于1表示全部保留
+     * @see LogConfig#getMSampleRates()
+     */
+    public static void setSampleRate(int type, float rate) {
+        if (null == sLogControlCenter) throw new NullPointerException("请先初始化JKLog");
+        sLogControlCenter.setSampleRate(type, rate);
+    }
+
+    /**
+     * 设置解析日志文件时额外使用的密钥。更换{@link LogConfig#getMEncryptKey16()}后，之前写入的日志需要通过旧密钥解析后才能上传。
+     *
+     * @param provider 提供更换前使用过的密钥，配置中的当前密钥总是最先尝试
+     */
+    public static void setKeyProvider(LogKeyProvider provider) {
+        if (null == sLogControlCenter) throw new NullPointerException("请先初始化JKLog");
+        sLogControlCenter.setKeyProvider(provider);
+    }
+
+    /**
+     * 捕获应用崩溃。
+     * <br/>
+     * 发生未捕获的异常时，在崩溃线程中将异常按{@link #e(int, String, Throwable)}的方式记录，并将尚未写入的日志全部写入文件，
+     * 耗时不超过{@link LogConfig#getMCrashDrainTimeout()}，之后交给原有的处理器继续处理。可在{@link #init(LogConfig)}之后立即调用。
+     *
+     * @param type 崩溃日志的类型
+     */
+    public static void catchCrash(int type) {
+        CrashHandler.install((t, e) -> {
+            final LogControlCenter center = sLogControlCenter;
+            if (null != center) center.drainOnCrash(type, t, e);
+        });
     }
 
     /**
@@ -73,24 +229,10 @@ public final class JKLog {
      *
      * @param type 日志类型，由记录者自行定义。<i>每次只能记录一个类型，不支持多个</i>
      * @param log  具体日志内容
-     * @param tr   异常对象。
+     * @param tr   异常对象。异常堆栈将在日志写入线程中渲染，层数与帧数受{@link LogConfig#getMStackCauseLimit()}与{@link LogConfig#getMStackFrameLimit()}限制
      */
     public static void e(int type, String log, Throwable tr) {
-        if (null == sLogControlCenter) throw new NullPointerException("请先初始化JKLog");
-        final StringBuilder builder = new StringBuilder(log);
-        final StringWriter sWriter = new StringWriter();
-        final PrintWriter pWriter = new PrintWriter(sWriter);
-        tr.printStackTrace(pWriter);
-        final String msg = sWriter.toString();
-        try {
-            sWriter.close();
-            pWriter.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        builder.append('\n');
-        builder.append(msg.replaceAll("[\\r\\t]", ""));
-        sLogControlCenter.write(builder.toString(), type);
+        writer().write(log, type, tr);
     }
 
     /**
@@ -102,7 +244,20 @@ public final class JKLog {
     }
 
     /**
-     * 停止在本地的日志记录工作。将现有队列中的日志写入完成，并不再接收新的日志写入。
+     * 停止由{@link #init(LogConfig)}开始的日志记录工作。将现有队列中的日志写入完成，并不再接收新的日志写入。
+     * 之后记录的日志被丢弃并计入{@link #getDroppedCount()}，直到再次初始化。
+     *
+     * @param isFlush 是否在停止前将缓存队列中的日志强制写入到日志文件中
+     */
+    public static synchronized void quit(boolean isFlush) {
+        if (null == sLogControlCenter) throw new NullPointerException("请先初始化JKLog");
+        sLogControlCenter.quit(isFlush);
+        sLogControlCenter = null;
+    }
+
+    /**
+     * 停止由{@link #init(Context, LogConfig)}开始的日志记录工作。将现有队列中的日志写入完成，并不再接收新的日志写入。
+     * 之后记录的日志被丢弃并计入{@link #getDroppedCount()}，直到再次初始化。
      *
      * @param context 当前运行时上下文
      * @param isFlush 是否在停止前将缓存队列中的日志强制写入到日志文件中
@@ -110,9 +265,22 @@ public final class JKLog {
     public static void quit(Context context, boolean isFlush) {
         if (null == sLogControlCenter) throw new NullPointerException("请先初始化JKLog");
         sLogControlCenter.quit(isFlush);
+        sLogControlCenter = null;
         context.unbindService(connection);
     }
 
+    /**
+     * 获取因待写入队列已满而被丢弃的日志总数；停止之后获取的是停止后被丢弃的日志总数
+     *
+     * @see LogConfig#getMOverflowPolicy()
+     */
+    public static long getDroppedCount() {
+        final LogControlCenter center = sLogControlCenter;
+        if (null != center) return center.droppedCount();
+        if (null == sCapture) return sClosed.droppedCount();
+        throw new NullPointerException("请先初始化JKLog");
+    }
+
     public static void setOnLogProtocolStatusListener(OnLogProtocolStatusListener listener) {
         if (null == sLogControlCenter) throw new NullPointerException("请先初始化JKLog");
         sLogControlCenter.setOnLogProtocolStatusListener(listener);
@@ -0,0 +1,16 @@
+package com.jinkeen.lifeplus.log;
+
+/**
+ * 延迟生成日志内容。
+ * <br/>
+ * 该方法将在日志写入线程中被调用，因此请确保其中访问的数据是线程安全的。
+ *
+ * @see JKLog#w(int, LogSupplier)
+ */
+public interface LogSupplier {
+
+    /**
+     * @return 日志内容
+     */
+    String get();
+}
@@ -0,0 +1,53 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import com.jinkeen.lifeplus.log.LogSupplier
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 停止记录之后的写入入口
+ * --
+ * 停止之后仍在运行的线程记录的日志在这里被丢弃并计数，不会抛出异常，也不会格式化或渲染任何内容。
+ */
+internal class ClosedLogWriter : LogWriter {
+
+    private val dropped = AtomicLong()
+
+    /** 停止之后被丢弃的日志总数 */
+    fun droppedCount(): Long = dropped.get()
+
+    override fun write(log: String, type: Int) {
+        dropped.incrementAndGet()
+    }
+
+    override fun write(log: String, type: Int, tr: Throwable) {
+        dropped.incrementAndGet()
+    }
+
+    override fun write(type: Int, pattern: String, arg: Any?) {
+        dropped.incrementAndGet()
+    }
+
+    override fun write(type: Int, pattern: String, arg: Long) {
+        dropped.incrementAndGet()
+    }
+
+    override fun write(type: Int, pattern: String, arg1: Any?, arg2: Any?) {
+        dropped.incrementAndGet()
+    }
+
+    override fun write(type: Int, pattern: String, arg1: Any?, arg2: Long) {
+        dropped.incrementAndGet()
+    }
+
+    override fun write(type: Int, pattern: String, arg1: Long, arg2: Long) {
+        dropped.incrementAndGet()
+    }
+
+    override fun write(type: Int, pattern: String, args: Array<out Any?>) {
+        dropped.incrementAndGet()
+    }
+
+    override fun write(type: Int, supplier: LogSupplier) {
+        dropped.incrementAndGet()
+    }
+}
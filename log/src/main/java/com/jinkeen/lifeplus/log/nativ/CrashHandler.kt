@@ -0,0 +1,53 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import android.util.Log
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * 未捕获异常的处理器
+ * --
+ * 应用崩溃时先在崩溃线程中记录异常并排空待写入的日志，再交给原有的处理器继续处理（通常会结束进程）。
+ * 记录过程中出现的任何异常都会被忽略，以保证原有的处理器一定会被调用。
+ *
+ * @property previous 原有的处理器
+ * @property onCrash 记录崩溃的动作，在崩溃线程中调用
+ */
+internal class CrashHandler(
+    private val previous: Thread.UncaughtExceptionHandler?,
+    private val onCrash: Thread.UncaughtExceptionHandler
+) : Thread.UncaughtExceptionHandler {
+
+    companion object {
+
+        private const val TAG = "CrashHandler"
+
+        /**
+         * 安装为默认的未捕获异常处理器，已安装过时只替换记录崩溃的动作
+         *
+         * @param onCrash 记录崩溃的动作
+         */
+        @JvmStatic
+        @Synchronized
+        fun install(onCrash: Thread.UncaughtExceptionHandler) {
+            val current = Thread.getDefaultUncaughtExceptionHandler()
+            val previous = if (current is CrashHandler) current.previous else current
+            Thread.setDefaultUncaughtExceptionHandler(CrashHandler(previous, onCrash))
+        }
+    }
+
+    // 同一时刻只记录一次崩溃，避免记录过程中再次崩溃时重复排空；记录结束后清除，原有的处理器未结束进程时之后的崩溃仍会被记录
+    private val isHandling = AtomicBoolean(false)
+
+    override fun uncaughtException(t: Thread, e: Throwable) {
+        if (isHandling.compareAndSet(false, true)) {
+            try {
+                onCrash.uncaughtException(t, e)
+            } catch (tr: Throwable) {
+                Log.e(TAG, "记录崩溃日志出现异常", tr)
+            } finally {
+                isHandling.set(false)
+            }
+        }
+        previous?.uncaughtException(t, e)
+    }
+}
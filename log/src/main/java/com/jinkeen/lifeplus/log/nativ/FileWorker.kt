@@ -1,81 +1,199 @@
 package com.jinkeen.lifeplus.log.nativ
 
-import com.jinkeen.lifeplus.log.util.SingletonFactory
-import com.jinkeen.lifeplus.log.util.getCurrentDateTimemillis
-import com.jinkeen.lifeplus.log.util.isCanWriteSDCard
+import com.dianping.logan.CLOAGN_WRITE_FAIL_MAXFILE
+import com.jinkeen.lifeplus.log.util.escapeTimemillis
+import com.jinkeen.lifeplus.log.util.nextDayTimemillis
 import java.io.File
-import java.util.concurrent.atomic.AtomicBoolean
-import java.util.concurrent.atomic.AtomicLong
 
-internal class FileWorker private constructor(private val config: LogConfig) {
-
-    object Instance : SingletonFactory<FileWorker, LogConfig>(::FileWorker)
+/**
+ * 日志文件的切换、索引与维护
+ * --
+ * 由每个[LogControlCenter]各自持有，除[start]、[stop]与[filterFiles]外只在其写入线程中使用。
+ *
+ * @property config 日志配置
+ */
+internal class FileWorker(private val config: LogConfig) {
 
     companion object {
 
-        /** 一分钟的毫秒数 */
-        private const val MINUTE = 60 * 1000L
+        /** 两次检查分段文件实际大小之间最少写入的字节数 */
+        private const val MIN_SIZE_CHECK_STEP = 64 * 1024L
     }
 
-    private var sLastRecordTime = 0L
+    // 当前分段所属的日期，以及下一次按日期切换的时间点
+    private var day = 0L
+    private var nextDay = 0L
+
+    private var seq = 0
+
+    // 分段文件实际大小达到该值后切换到新的分段，为底层的缓存留出余量
+    private val rollSize = config.mMaxFile / 10 * 9
+
+    // 自上次检查分段大小以来写入的字节数（估算值）
+    private var uncheckedBytes = 0L
+    private val sizeCheckStep = maxOf(config.mMaxFile / 8, MIN_SIZE_CHECK_STEP)
+
+    // 当前分段已写入的日志类型，前typeCount个有效且保持升序
+    private var types = IntArray(8)
+    private var typeCount = 0
 
-    private val lastTime = AtomicLong(0)
-    private val isCanWrite = AtomicBoolean(true)
+    // 当前分段文件及其索引，以及自上次强制写入以来写入的字节数（估算值）
+    private var current: File? = null
+    private val index = LogIndexWriter()
+    private var unindexedBytes = 0L
+
+    private val monitor = StorageMonitor(config)
+    private val janitor = RetentionJanitor(config) { monitor.wake() }
+
+    /**
+     * 开始监视存储空间与清理日志文件
+     */
+    internal fun start() {
+        monitor.start()
+        janitor.start()
+    }
+
+    /**
+     * 停止监视存储空间与清理日志文件
+     */
+    internal fun stop() {
+        monitor.stop()
+        janitor.stop()
+    }
 
     internal fun write(protocol: LogProtocol, w: WriteAction) {
-        // 默认自动在每天的0点整创建一个新的日志存储文件
-        if (sLastRecordTime == 0L || System.currentTimeMillis() - LogConfig.DAY >= sLastRecordTime) {
-            sLastRecordTime = getCurrentDateTimemillis()
-            this.deleteExpiredFile(sLastRecordTime - config.saveDays)
-            protocol.open(sLastRecordTime.toString())
-        }
-        val currentTime = System.currentTimeMillis()
-        if (currentTime - lastTime.get() > MINUTE)
-            isCanWrite.set(isCanWriteSDCard(config.logDirPath, config.mMinSDCard))
-        lastTime.set(System.currentTimeMillis())
-        if (!isCanWrite.get()) return // 如果不再允许写入
+        if (!this.prepare(protocol)) return // 如果不再允许写入
 
+        this.markType(w.flag)
+        index.add(w)
         protocol.write(w.flag, w.log, w.localTime, w.threadName, w.threadId, w.isMainThread)
+        this.account(protocol, w.log.length.toLong())
     }
 
     /**
-     * 删除过期的文件
+     * 批量写入，日期切换与磁盘容量检查在整个批次中只进行一次。
+     * --
+     * 当前分段已满时切换到新的分段并继续写入剩余的日志。
      *
-     * @param delTime 过期的最早时间
+     * @param protocol 日志协议
+     * @param batch 要写入的日志批次
      */
-    private fun deleteExpiredFile(delTime: Long) {
-        File(config.logDirPath).apply {
-            if (isDirectory) listFiles()?.forEach {
-                if (it.name.matches(Regex("\\d{13}"))) {
-                    if (it.name.toLong() <= delTime) it.delete()
-                }
+    internal fun write(protocol: LogProtocol, batch: List<WriteAction>) {
+        if (batch.isEmpty() || !this.prepare(protocol)) return
+
+        var bytes = 0L
+        for (i in batch.indices) {
+            bytes += batch[i].log.length
+            this.markType(batch[i].flag)
+        }
+        var from = 0
+        var isRolled = false
+        while (from < batch.size) {
+            val next = protocol.writeBatch(batch, from)
+            for (i in from until minOf(next, batch.size)) index.add(batch[i])
+            if (next >= batch.size) break
+            // 新分段仍无法写入，说明单条日志超过了文件大小上限，跳过该条
+            if (isRolled && next == from) {
+                from = next + 1
+                continue
             }
+            from = next
+            this.roll(protocol)
+            isRolled = true
+            for (i in from until batch.size) this.markType(batch[i].flag)
         }
+        this.account(protocol, bytes)
+    }
+
+    // 写入前的准备工作，返回是否允许写入
+    private fun prepare(protocol: LogProtocol): Boolean {
+        // 默认自动在每天的0点整切换到新的日志存储文件
+        if (System.currentTimeMillis() >= nextDay) this.open(protocol, System.currentTimeMillis())
+        if (monitor.isWritable()) return true
+        // 空间不足时通知清理线程，清理完成后会恢复写入；同时尽快重新检查，避免因过时的结果丢弃日志
+        janitor.trigger()
+        monitor.recheck()
+        return false
+    }
+
+    // 打开指定时间所在日期的最后一个分段，已满时打开下一个分段
+    private fun open(protocol: LogProtocol, time: Long) {
+        day = escapeTimemillis(time)
+        nextDay = nextDayTimemillis(day)
+        val last = LogSegment.list(File(config.logDirPath)).lastOrNull { it.day == day }
+        seq = when {
+            null == last -> 0
+            last.file.length() >= rollSize -> last.seq + 1
+            else -> last.seq
+        }
+        this.activate(protocol)
+    }
+
+    // 切换到当天的下一个分段
+    private fun roll(protocol: LogProtocol) {
+        seq++
+        this.activate(protocol)
+    }
+
+    private fun activate(protocol: LogProtocol) {
+        if (null != current) {
+            // 切换前将之前分段中的日志强制写入，按已封装的位置记录索引
+            this.flush(protocol)
+        }
+        val name = LogSegment.name(day, seq)
+        uncheckedBytes = 0L
+        typeCount = 0
+        janitor.activate(name)
+        protocol.open(name)
+        current = File(config.logDirPath, name).also { index.activate(it) }
+        janitor.trigger()
+    }
+
+    // 记录当前分段写入的日志类型，出现新的类型时交给清理线程保存
+    private fun markType(type: Int) {
+        val index = types.binarySearch(type, 0, typeCount)
+        if (index >= 0) return
+        if (typeCount == types.size) types = types.copyOf(typeCount * 2)
+        val at = -index - 1
+        System.arraycopy(types, at, types, at + 1, typeCount - at)
+        types[at] = type
+        typeCount++
+        janitor.markTypes(LogSegment.name(day, seq), types.copyOf(typeCount))
+    }
+
+    // 累计写入的字节数并记录索引，每写入一定量后检查一次分段的实际大小
+    private fun account(protocol: LogProtocol, bytes: Long) {
+        monitor.account(bytes)
+        this.checkpoint(protocol)
+        unindexedBytes += bytes
+        if (config.mIndexBytes > 0 && unindexedBytes >= config.mIndexBytes) this.flush(protocol)
+        uncheckedBytes += bytes
+        if (uncheckedBytes < sizeCheckStep) return
+        uncheckedBytes = 0L
+        if (File(config.logDirPath, LogSegment.name(day, seq)).length() >= rollSize) this.roll(protocol)
     }
 
     internal fun flush(protocol: LogProtocol) {
         protocol.flush()
+        unindexedBytes = 0L
+        this.checkpoint(protocol)
+    }
+
+    // 标记新写入的日志，并按最近封装完成的位置记录索引，不等待封装
+    private fun checkpoint(protocol: LogProtocol) {
+        index.mark(protocol.writtenSeq())
+        protocol.sealMark()?.let { index.checkpoint(it) }
     }
 
     /**
      * 筛选出符合指定时间条件的所有文件。
      * --
-     * 所谓符合条件，即(file)：begin <= file && file <= end
+     * 所谓符合条件，即(file)：begin <= file所属日期 && file所属日期 <= end，同一天的分段按序号排列
      *
      * @param begin 开始时间
      * @param end 结束时间
      * @return 返回符合条件的所有文件
      */
-    internal fun filterFiles(begin: Long, end: Long): List<File> {
-        val logFiles = arrayListOf<File>()
-        File(config.logDirPath).apply {
-            if (isDirectory) listFiles()?.forEach {
-                if (it.name.matches(Regex("\\d{13}"))) {
-                    if (it.name.toLong() in begin..end) logFiles.add(it)
-                }
-            }
-        }
-        logFiles.sortBy { f -> f.name.toLong() }
-        return logFiles
-    }
+    internal fun filterFiles(begin: Long, end: Long): List<File> =
+        LogSegment.list(File(config.logDirPath)).filter { it.day in begin..end }.map { it.file }
 }
\ No newline at end of file
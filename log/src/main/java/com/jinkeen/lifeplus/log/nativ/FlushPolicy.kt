@@ -0,0 +1,95 @@
+package com.jinkeen.lifeplus.log.nativ
+
+/**
+ * 强制写入（`flush`）的组提交策略
+ * --
+ * 记录自上次强制写入以来提交的日志，满足以下任一条件时进行一次强制写入：
+ * - 日志条数达到[LogConfig.mFlushCount]
+ * - 日志字节数（估算值）达到[LogConfig.mFlushBytes]
+ * - 最早一条日志已等待[LogConfig.mFlushLatency]毫秒
+ * - 提交了[LogConfig.mFlushTypes]中的类型
+ * - 调用者主动请求，且距离上次强制写入已超过[LogConfig.mFlushCoalesce]毫秒；间隔过短的请求会被合并，延后到间隔结束时执行
+ *
+ * 只会在写入线程中使用。
+ *
+ * @property config 日志配置
+ */
+internal class FlushPolicy(private val config: LogConfig) {
+
+    private val urgentTypes = config.mFlushTypes.sortedArray()
+
+    // 自上次强制写入以来提交的日志
+    private var count = 0
+    private var bytes = 0L
+    private var oldest = 0L
+
+    private var isUrgent = false
+    private var isRequested = false
+    private var lastFlush = 0L
+
+    /**
+     * 记录一条已提交的日志
+     *
+     * @param w 日志记录
+     * @param now 当前时间
+     */
+    fun onWrite(w: WriteAction, now: Long) {
+        if (count == 0) oldest = now
+        count++
+        bytes += w.log.length
+        if (!isUrgent && urgentTypes.isNotEmpty() && urgentTypes.binarySearch(w.flag) >= 0) isUrgent = true
+    }
+
+    /**
+     * 记录一次主动的强制写入请求
+     */
+    fun request() {
+        isRequested = true
+    }
+
+    /**
+     * 当前是否需要进行强制写入
+     *
+     * @param now 当前时间
+     */
+    fun shouldFlush(now: Long): Boolean {
+        if (isRequested && now - lastFlush >= config.mFlushCoalesce) return true
+        if (count == 0) return false
+        return isUrgent
+                || (config.mFlushCount in 1..count)
+                || (config.mFlushBytes in 1..bytes)
+                || (config.mFlushLatency > 0 && now - oldest >= config.mFlushLatency)
+    }
+
+    /**
+     * 距离下一次需要检查的毫秒数
+     *
+     * @param now 当前时间
+     * @return 没有需要等待的条件时返回`-1`
+     */
+    fun delay(now: Long): Long {
+        var delay = -1L
+        if (isRequested) delay = maxOf(0L, lastFlush + config.mFlushCoalesce - now)
+        if (count > 0 && config.mFlushLatency > 0) maxOf(0L, oldest + config.mFlushLatency - now).let {
+            delay = if (delay < 0) it else minOf(delay, it)
+        }
+        return delay
+    }
+
+    /** 是否有尚未执行的强制写入请求 */
+    fun isRequested(): Boolean = isRequested
+
+    /**
+     * 记录已完成一次强制写入
+     *
+     * @param now 当前时间
+     */
+    fun onFlushed(now: Long) {
+        count = 0
+        bytes = 0L
+        oldest = 0L
+        isUrgent = false
+        isRequested = false
+        lastFlush = now
+    }
+}
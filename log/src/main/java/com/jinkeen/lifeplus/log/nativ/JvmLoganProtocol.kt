@@ -0,0 +1,566 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import android.util.Log
+import com.dianping.logan.*
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicIntegerArray
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.LockSupport
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import javax.crypto.Cipher
+import javax.crypto.spec.IvParameterSpec
+import javax.crypto.spec.SecretKeySpec
+import kotlin.concurrent.thread
+
+/**
+ * 纯Java实现的Logan写入协议
+ * --
+ * 底层库不可用时（如x86设备、JVM单元测试）代替[CLoganProtocol]，写入的文件格式与底层库相同，可由`LogParserProtocol`解析：
+ * 每个数据块以`0x01`开头，之后是4字节的密文长度、密文与结尾的`0x00`。密文是gzip压缩后经过`AES/CBC`加密的内容，
+ * 内容为逐行的`JSON`日志记录（`c/f/l/n/i/m`字段）。
+ *
+ * 缓存文件映射到内存并分为[slotCount]个暂存区，写入线程只将日志记录编码后写入当前暂存区；暂存区写满或强制写入时交给封装线程，
+ * 由封装线程压缩、加密并追加到日志文件，写入线程随即切换到下一个暂存区继续写入，不会等待封装完成。
+ * 暂存区按顺序循环使用，交接只通过每个暂存区的原子状态完成，不使用锁；只有全部暂存区都在等待封装时写入线程才会等待。
+ *
+ * 与底层库相同，数据块只在日志记录之间结束，超过[BLOCK_LIMIT]的单条记录在字符边界处拆分，逐个数据块解码的解析工具也能得到完整的字符。
+ *
+ * 每封装完成一个暂存区更新一次[sealMark]，写入线程据此记录索引，不需要等待封装。
+ *
+ * 进程意外结束时暂存区中的日志保留在缓存文件中，下次初始化时封装并写入对应的日志文件。[close]后封装线程退出，实例不能再次使用。
+ *
+ * @param slotSize 每个暂存区的字节数
+ * @param slotCount 暂存区的个数
+ * @param isAsync 是否使用独立的封装线程，为`false`时在写入线程中封装
+ */
+internal class JvmLoganProtocol @JvmOverloads constructor(
+    private val slotSize: Int = DEFAULT_SLOT_SIZE,
+    private val slotCount: Int = DEFAULT_SLOT_COUNT,
+    private val isAsync: Boolean = true
+) : LoganProtocolHandler {
+
+    companion object {
+
+        private const val TAG = "JvmLoganProtocol"
+
+        /** 默认每个暂存区的字节数 */
+        const val DEFAULT_SLOT_SIZE = 64 * 1024
+
+        /** 默认暂存区的个数 */
+        const val DEFAULT_SLOT_COUNT = 3
+
+        private const val CACHE_FILE = "logan_jvm.mmap"
+
+        // 缓存文件头：标识、暂存区个数、暂存区大小
+        private const val HEADER_SIZE = 64
+        private const val MAGIC = 0x4C4A4D32
+
+        // 暂存区头：状态、序号、数据字节数、已封装的字节数、日志文件名
+        private const val SLOT_HEADER_SIZE = 256
+        private const val SLOT_STATE = 0
+        private const val SLOT_SEQ = 4
+        private const val SLOT_LENGTH = 12
+        private const val SLOT_SEALED = 16
+        private const val SLOT_NAME = 20
+        private const val MAX_NAME_BYTES = SLOT_HEADER_SIZE - SLOT_NAME - 2
+
+        // 暂存区状态：空闲、写入中、等待封装
+        private const val FREE = 0
+        private const val FILLING = 1
+        private const val READY = 2
+
+        /** 单个数据块最多压缩的原始字节数，与底层库相同 */
+        private const val BLOCK_LIMIT = 5 * 1024
+
+        /** 等待空闲暂存区时每次等待的纳秒数 */
+        private val WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100)
+
+        private const val BLOCK_START: Byte = 1
+        private const val BLOCK_END: Byte = 0
+        private const val AES_BLOCK = 16
+        private const val LINE_END = '\n'.code.toByte()
+
+        private val GZIP_HEADER = byteArrayOf(0x1f, 0x8b.toByte(), Deflater.DEFLATED.toByte(), 0, 0, 0, 0, 0, 0, 3)
+    }
+
+    private var isInitialized = false
+
+    @Volatile
+    private var isClosed = false
+
+    @Volatile
+    private var isDebug = false
+
+    private lateinit var dir: File
+    private var maxFile = 0L
+    private lateinit var key: SecretKeySpec
+    private lateinit var iv: IvParameterSpec
+    private lateinit var cache: ByteBuffer
+
+    // 写入线程与封装线程各自使用的视图，位置互不影响
+    private lateinit var fillView: ByteBuffer
+    private val states = AtomicIntegerArray(slotCount)
+    private var sealer: Thread? = null
+
+    /** 最近封装完成的位置，由封装线程更新 */
+    @Volatile
+    var sealMark: SealMark? = null
+        private set
+
+    // 以下只在写入线程中使用
+    private var fileName: String? = null
+    private var seq = 0L
+    private var fillIndex = 0
+    private var active = -1
+    private var activeLength = 0
+
+    // 打开文件时的文件大小，以及之后写入的原始字节数，用于估算文件大小
+    private var fileBase = 0L
+    private var rawSinceOpen = 0L
+
+    // 已封装的原始字节数与写入文件的字节数，用于估算压缩比例
+    private val sealedRaw = AtomicLong()
+    private val sealedBytes = AtomicLong()
+
+    // 当前日志记录的UTF-8编码
+    private var record = ByteArray(1024)
+    private var recordLength = 0
+
+    override fun clogan_init(cache_path: String, dir_path: String, max_file: Int, encrypt_key_16: String, encrypt_iv_16: String): Int {
+        if (isInitialized) return CLOGAN_INIT_SUCCESS_MMAP
+        if (isClosed) return CLOGAN_INIT_FAIL_HEADER
+        dir = File(dir_path).apply { mkdirs() }
+        maxFile = max_file.toLong()
+        try {
+            key = SecretKeySpec(encrypt_key_16.toByteArray(), "AES")
+            iv = IvParameterSpec(encrypt_iv_16.toByteArray())
+            Cipher.getInstance("AES/CBC/NoPadding").init(Cipher.ENCRYPT_MODE, key, iv)
+        } catch (e: Exception) {
+            Log.e(TAG, "初始化加密失败", e)
+            return CLOGAN_INIT_FAIL_HEADER
+        }
+        val size = HEADER_SIZE + slotCount * (SLOT_HEADER_SIZE + slotSize)
+        var code = CLOGAN_INIT_SUCCESS_MMAP
+        cache = try {
+            val file = File(cache_path).apply { mkdirs() }.let { File(it, CACHE_FILE) }
+            RandomAccessFile(file, "rw").use {
+                if (it.length() < size) it.setLength(size.toLong())
+                it.channel.map(FileChannel.MapMode.READ_WRITE, 0, size.toLong())
+            }
+        } catch (e: IOException) {
+            Log.e(TAG, "映射缓存文件失败，使用堆内存缓存", e)
+            code = CLOGAN_INIT_SUCCESS_MEMORY
+            ByteBuffer.allocate(size)
+        }
+        fillView = cache.duplicate()
+        val seal = Sealer()
+        try {
+            this.recover(seal)
+        } catch (e: Exception) {
+            Log.e(TAG, "恢复缓存文件中的日志失败", e)
+        }
+        for (i in 0 until slotCount) this.setState(i, FREE)
+        cache.putInt(4, slotCount)
+        cache.putInt(8, slotSize)
+        cache.putInt(0, MAGIC)
+        if (isAsync) sealer = thread(start = true, isDaemon = true, name = "log_jvm_sealer") {
+            while (!isClosed) {
+                seal.sealPending()
+                LockSupport.park(this)
+            }
+            // 关闭前交出的暂存区
+            seal.sealPending()
+            seal.release()
+        } else this.seal = seal
+        isInitialized = true
+        return code
+    }
+
+    // 不使用封装线程时在写入线程中封装
+    private var seal: Sealer? = null
+
+    override fun clogan_open(file_name: String): Int {
+        if (!isInitialized) return CLOGAN_OPEN_FAIL_NOINIT
+        // 当前暂存区中的日志属于之前的文件
+        if (file_name != fileName) this.handoff()
+        fileName = file_name
+        fileBase = File(dir, file_name).length()
+        rawSinceOpen = 0L
+        return CLOGAN_OPEN_SUCCESS
+    }
+
+    override fun clogan_debug(is_debug: Boolean) {
+        isDebug = is_debug
+    }
+
+    override fun clogan_write(flag: Int, log: String, local_time: Long, thread_name: String, thread_id: Long, is_main: Int): Int {
+        if (!isInitialized || null == fileName) return CLOGAN_WRITE_FAIL_HEADER
+        if (log.isEmpty()) return CLOGAN_WRITE_FAIL_PARAM
+        if (this.estimatedLength() >= maxFile) return CLOAGN_WRITE_FAIL_MAXFILE
+        this.encodeRecord(flag, log, local_time, thread_name, thread_id, is_main != 0)
+        this.append(record, recordLength)
+        return CLOGAN_WRITE_SUCCESS
+    }
+
+    /**
+     * 将当前暂存区交给封装线程，不等待封装完成
+     */
+    override fun clogan_flush() {
+        if (isInitialized) this.handoff()
+    }
+
+    /**
+     * 最新一条日志所在暂存区的序号，只在写入线程中使用
+     */
+    fun writtenSeq(): Long = seq - 1
+
+    /**
+     * 等待已交出的暂存区全部封装完成
+     *
+     * @param timeout 最长等待的毫秒数
+     * @return `true`表示全部封装完成
+     */
+    fun awaitSealed(timeout: Long): Boolean {
+        val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout)
+        while (true) {
+            var pending = false
+            for (i in 0 until slotCount) if (states.get(i) == READY) pending = true
+            if (!pending) return true
+            if (System.nanoTime() - deadline >= 0) return false
+            LockSupport.unpark(sealer)
+            LockSupport.parkNanos(WAIT_NANOS)
+        }
+    }
+
+    /**
+     * 交出当前暂存区，等待封装完成后停止封装线程
+     *
+     * @param timeout 最长等待的毫秒数
+     * @return `true`表示全部封装完成，封装线程已退出
+     */
+    fun close(timeout: Long): Boolean {
+        if (!isInitialized) return true
+        this.handoff()
+        isInitialized = false
+        isClosed = true
+        val t = sealer ?: return true.also { seal?.release() }
+        LockSupport.unpark(t)
+        t.join(timeout)
+        return !t.isAlive
+    }
+
+    // 估算当前文件的大小：已有大小加上之后写入的原始字节数按已封装部分的压缩比例折算
+    private fun estimatedLength(): Long {
+        val raw = sealedRaw.get()
+        return if (raw == 0L) fileBase + rawSinceOpen else fileBase + rawSinceOpen * sealedBytes.get() / raw
+    }
+
+    // 一条日志记录只写入一个暂存区，当前暂存区放不下时先交出；超过暂存区大小的记录在字符边界处拆分
+    private fun append(bytes: ByteArray, length: Int) {
+        if (active >= 0 && length <= slotSize && length > slotSize - activeLength) this.handoff()
+        var off = 0
+        while (off < length) {
+            if (active < 0) this.acquire()
+            var n = minOf(length - off, slotSize - activeLength)
+            if (off + n < length) n = utf8Boundary(bytes, off, n)
+            fillView.position(this.dataOffset(active) + activeLength)
+            fillView.put(bytes, off, n)
+            activeLength += n
+            cache.putInt(this.headerOffset(active) + SLOT_LENGTH, activeLength)
+            off += n
+            if (activeLength == slotSize || off < length) this.handoff()
+        }
+        rawSinceOpen += length
+    }
+
+    // 按顺序取得下一个暂存区，全部暂存区都在等待封装时等待封装线程
+    private fun acquire() {
+        val index = fillIndex
+        while (states.get(index) != FREE) {
+            LockSupport.unpark(sealer)
+            LockSupport.parkNanos(WAIT_NANOS)
+        }
+        val header = this.headerOffset(index)
+        cache.putLong(header + SLOT_SEQ, seq++)
+        cache.putInt(header + SLOT_LENGTH, 0)
+        cache.putInt(header + SLOT_SEALED, 0)
+        this.saveName(header, fileName!!)
+        this.setState(index, FILLING)
+        active = index
+        activeLength = 0
+    }
+
+    // 将当前暂存区交给封装线程
+    private fun handoff() {
+        if (active < 0) return
+        if (activeLength > 0) {
+            this.setState(active, READY)
+            fillIndex = (active + 1) % slotCount
+            if (isAsync) LockSupport.unpark(sealer) else seal?.sealPending()
+        } else this.setState(active, FREE)
+        active = -1
+        activeLength = 0
+    }
+
+    // 从off开始最多n个字节中，不拆分UTF-8字符的最大字节数
+    private fun utf8Boundary(bytes: ByteArray, off: Int, n: Int): Int {
+        var end = off + n
+        while (end > off && (bytes[end].toInt() and 0xC0) == 0x80) end--
+        return if (end > off) end - off else n
+    }
+
+    private fun setState(index: Int, state: Int) {
+        cache.putInt(this.headerOffset(index) + SLOT_STATE, state)
+        states.set(index, state)
+    }
+
+    private fun headerOffset(index: Int): Int = HEADER_SIZE + index * (SLOT_HEADER_SIZE + slotSize)
+
+    private fun dataOffset(index: Int): Int = this.headerOffset(index) + SLOT_HEADER_SIZE
+
+    private fun saveName(header: Int, name: String) {
+        val bytes = name.toByteArray()
+        val length = minOf(bytes.size, MAX_NAME_BYTES)
+        cache.putShort(header + SLOT_NAME, length.toShort())
+        for (i in 0 until length) cache.put(header + SLOT_NAME + 2 + i, bytes[i])
+    }
+
+    private fun readName(buffer: ByteBuffer, header: Int): String? {
+        val length = buffer.getShort(header + SLOT_NAME).toInt()
+        if (length <= 0 || length > MAX_NAME_BYTES) return null
+        return String(ByteArray(length) { buffer.get(header + SLOT_NAME + 2 + it) })
+    }
+
+    // 将上次进程结束时尚未封装的暂存区按写入顺序封装，写入对应的日志文件
+    private fun recover(seal: Sealer) {
+        if (cache.getInt(0) != MAGIC || cache.getInt(4) != slotCount || cache.getInt(8) != slotSize) return
+        val pending = (0 until slotCount).filter {
+            val header = this.headerOffset(it)
+            cache.getInt(header + SLOT_STATE) != FREE && cache.getInt(header + SLOT_LENGTH) in 1..slotSize
+        }.sortedBy { cache.getLong(this.headerOffset(it) + SLOT_SEQ) }
+        for (index in pending) {
+            Log.d(TAG, "恢复缓存中的日志：${readName(cache, this.headerOffset(index))}, ${cache.getInt(this.headerOffset(index) + SLOT_LENGTH)}字节")
+            seal.seal(index)
+        }
+    }
+
+    /**
+     * 封装暂存区：按[BLOCK_LIMIT]分块压缩、加密后追加到日志文件
+     * --
+     * 只在封装线程中使用（不使用封装线程时在写入线程中使用），拥有独立的压缩与加密对象。
+     */
+    private inner class Sealer {
+
+        private val view = cache.duplicate()
+        private val cipher = Cipher.getInstance("AES/CBC/NoPadding")
+        private val deflater = Deflater(Deflater.DEFAULT_COMPRESSION, true)
+        private val crc = CRC32()
+        private val raw = ByteArray(BLOCK_LIMIT)
+
+        // 压缩结果：gzip头、压缩数据、gzip尾与补齐
+        private var gzip = ByteArray(BLOCK_LIMIT * 2)
+
+        // 加密结果：块头、密文与块尾
+        private var block = ByteArray(BLOCK_LIMIT * 2)
+
+        private var sealIndex = 0
+
+        /** 按顺序封装全部等待封装的暂存区 */
+        fun sealPending() {
+            while (states.get(sealIndex) == READY) {
+                try {
+                    this.seal(sealIndex)?.let { sealMark = it }
+                } catch (e: Exception) {
+                    Log.e(TAG, "封装日志失败", e)
+                }
+                this@JvmLoganProtocol.setState(sealIndex, FREE)
+                sealIndex = (sealIndex + 1) % slotCount
+            }
+        }
+
+        /** 封装指定的暂存区，返回封装完成的位置，没有需要封装的日志时返回`null` */
+        fun seal(index: Int): SealMark? {
+            val header = this@JvmLoganProtocol.headerOffset(index)
+            val data = this@JvmLoganProtocol.dataOffset(index)
+            val name = readName(view, header) ?: return null
+            val length = view.getInt(header + SLOT_LENGTH)
+            var sealed = view.getInt(header + SLOT_SEALED)
+            if (sealed >= length) return null
+            val begin = System.nanoTime()
+            var written = 0L
+            var end = 0L
+            FileOutputStream(File(dir, name), true).use { out ->
+                val channel = out.channel
+                while (sealed < length) {
+                    var n = minOf(BLOCK_LIMIT, length - sealed)
+                    view.position(data + sealed)
+                    view.get(raw, 0, n)
+                    if (sealed + n < length) n = this.blockLength(data + sealed, n)
+                    val size = this.encode(n)
+                    val buffer = ByteBuffer.wrap(block, 0, size)
+                    while (buffer.hasRemaining()) channel.write(buffer)
+                    sealed += n
+                    written += size
+                    // 进程在此处结束时，恢复后从这里继续封装
+                    view.putInt(header + SLOT_SEALED, sealed)
+                }
+                end = channel.size()
+            }
+            sealedRaw.addAndGet(length.toLong())
+            sealedBytes.addAndGet(written)
+            if (isDebug) Log.d(TAG, "封装暂存区：$name, ${length}字节 -> ${written}字节，耗时${(System.nanoTime() - begin) / 1000}us")
+            return SealMark(name, view.getLong(header + SLOT_SEQ), end)
+        }
+
+        /** 释放压缩使用的本地内存 */
+        fun release() {
+            deflater.end()
+        }
+
+        // raw中从offset开始的n个字节内，数据块在最后一条完整的日志记录之后结束；单条记录超过上限时在字符边界处拆分
+        private fun blockLength(offset: Int, n: Int): Int {
+            for (i in n - 1 downTo 0) if (raw[i] == LINE_END) return i + 1
+            var end = n
+            while (end > 0 && (view.get(offset + end).toInt() and 0xC0) == 0x80) end--
+            return if (end > 0) end else n
+        }
+
+        // 压缩并加密raw中的n个字节，返回block中数据块的字节数
+        private fun encode(n: Int): Int {
+            val bound = GZIP_HEADER.size + n + (n shr 3) + 64
+            if (gzip.size < bound) gzip = ByteArray(bound)
+            System.arraycopy(GZIP_HEADER, 0, gzip, 0, GZIP_HEADER.size)
+            var size = GZIP_HEADER.size
+            deflater.reset()
+            deflater.setInput(raw, 0, n)
+            deflater.finish()
+            while (!deflater.finished()) {
+                if (size == gzip.size) gzip = gzip.copyOf(gzip.size * 2)
+                size += deflater.deflate(gzip, size, gzip.size - size)
+            }
+            // gzip结尾，之后补齐到加密块的整数倍
+            crc.reset()
+            crc.update(raw, 0, n)
+            val pad = (AES_BLOCK - (size + 8) % AES_BLOCK) % AES_BLOCK
+            if (gzip.size < size + 8 + pad) gzip = gzip.copyOf(size + 8 + pad)
+            val value = crc.value
+            for (i in 0 until 4) gzip[size++] = (value ushr (i * 8)).toByte()
+            for (i in 0 until 4) gzip[size++] = (n ushr (i * 8)).toByte()
+            for (i in 0 until pad) gzip[size++] = pad.toByte()
+
+            if (block.size < size + 6) block = ByteArray(size + 6)
+            cipher.init(Cipher.ENCRYPT_MODE, key, iv)
+            val length = cipher.doFinal(gzip, 0, size, block, 5)
+            block[0] = BLOCK_START
+            block[1] = (length ushr 24).toByte()
+            block[2] = (length ushr 16).toByte()
+            block[3] = (length ushr 8).toByte()
+            block[4] = length.toByte()
+            block[5 + length] = BLOCK_END
+            return length + 6
+        }
+    }
+
+    // 按与底层库相同的格式编码一条日志记录：{"c":"内容","f":类型,"l":时间,"n":"线程名","i":线程ID,"m":是否主线程}
+    private fun encodeRecord(flag: Int, log: String, time: Long, threadName: String, threadId: Long, isMain: Boolean) {
+        recordLength = 0
+        this.putAscii("{\"c\":\"")
+        this.putString(log)
+        this.putAscii("\",\"f\":")
+        this.putLong(flag.toLong())
+        this.putAscii(",\"l\":")
+        this.putLong(time)
+        this.putAscii(",\"n\":\"")
+        this.putString(threadName)
+        this.putAscii("\",\"i\":")
+        this.putLong(threadId)
+        this.putAscii(if (isMain) ",\"m\":true}\n" else ",\"m\":false}\n")
+    }
+
+    private fun ensure(size: Int) {
+        if (recordLength + size > record.size) record = record.copyOf(maxOf(record.size * 2, recordLength + size))
+    }
+
+    private fun putAscii(s: String) {
+        this.ensure(s.length)
+        for (i in s.indices) record[recordLength++] = s[i].code.toByte()
+    }
+
+    private fun putLong(value: Long) {
+        this.ensure(20)
+        // 以负数计算，可以处理Long.MIN_VALUE
+        var v = value
+        if (v < 0) record[recordLength++] = '-'.code.toByte() else v = -v
+        val start = recordLength
+        do {
+            record[recordLength++] = ('0'.code - (v % 10).toInt()).toByte()
+            v /= 10
+        } while (v != 0L)
+        var i = start
+        var j = recordLength - 1
+        while (i < j) {
+            val t = record[i]
+            record[i++] = record[j]
+            record[j--] = t
+        }
+    }
+
+    // 转义后以UTF-8编码写入字符串
+    private fun putString(s: String) {
+        this.ensure(s.length * 6)
+        var i = 0
+        while (i < s.length) {
+            val c = s[i++]
+            when {
+                c == '"' || c == '\\' -> {
+                    record[recordLength++] = '\\'.code.toByte()
+                    record[recordLength++] = c.code.toByte()
+                }
+                c < ' ' -> when (c) {
+                    '\n' -> this.putEscape('n')
+                    '\r' -> this.putEscape('r')
+                    '\t' -> this.putEscape('t')
+                    '\b' -> this.putEscape('b')
+                    '\u000C' -> this.putEscape('f')
+                    else -> {
+                        this.putEscape('u')
+                        record[recordLength++] = '0'.code.toByte()
+                        record[recordLength++] = '0'.code.toByte()
+                        record[recordLength++] = Character.forDigit(c.code shr 4, 16).code.toByte()
+                        record[recordLength++] = Character.forDigit(c.code and 0xF, 16).code.toByte()
+                    }
+                }
+                c.code < 0x80 -> record[recordLength++] = c.code.toByte()
+                c.code < 0x800 -> {
+                    record[recordLength++] = (0xC0 or (c.code shr 6)).toByte()
+                    record[recordLength++] = (0x80 or (c.code and 0x3F)).toByte()
+                }
+                Character.isHighSurrogate(c) && i < s.length && Character.isLowSurrogate(s[i]) -> {
+                    val cp = Character.toCodePoint(c, s[i++])
+                    record[recordLength++] = (0xF0 or (cp shr 18)).toByte()
+                    record[recordLength++] = (0x80 or ((cp shr 12) and 0x3F)).toByte()
+                    record[recordLength++] = (0x80 or ((cp shr 6) and 0x3F)).toByte()
+                    record[recordLength++] = (0x80 or (cp and 0x3F)).toByte()
+                }
+                Character.isSurrogate(c) -> record[recordLength++] = '?'.code.toByte()
+                else -> {
+                    record[recordLength++] = (0xE0 or (c.code shr 12)).toByte()
+                    record[recordLength++] = (0x80 or ((c.code shr 6) and 0x3F)).toByte()
+                    record[recordLength++] = (0x80 or (c.code and 0x3F)).toByte()
+                }
+            }
+        }
+    }
+
+    private fun putEscape(c: Char) {
+        record[recordLength++] = '\\'.code.toByte()
+        record[recordLength++] = c.code.toByte()
+    }
+}
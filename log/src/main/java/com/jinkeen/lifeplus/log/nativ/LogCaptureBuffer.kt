@@ -0,0 +1,113 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import android.os.Looper
+import com.jinkeen.lifeplus.log.LogSupplier
+
+/**
+ * 初始化之前的日志暂存区
+ * --
+ * 日志引擎就绪之前的写入调用先记录在这里，保留调用时的时间与线程信息，延迟格式化的日志仍在写入线程中生成内容。
+ * 引擎就绪后通过[replayTo]按调用顺序转交，之后的调用直接转发给引擎。
+ *
+ * 记录预先分配且数量固定，超出容量的日志被丢弃，转交时记录一条丢弃数量的日志。
+ *
+ * @param capacity 最多暂存的日志条数
+ */
+internal class LogCaptureBuffer @JvmOverloads constructor(capacity: Int = DEFAULT_CAPACITY) : LogWriter {
+
+    companion object {
+
+        /** 默认最多暂存的日志条数 */
+        const val DEFAULT_CAPACITY = 128
+    }
+
+    private val records = Array(capacity) { WriteAction() }
+    private var count = 0
+
+    // 暂存区已满后丢弃的日志数量，以及第一条被丢弃的日志类型
+    private var dropped = 0
+    private var droppedType = 0
+
+    private var target: LogWriter? = null
+
+    // 已转交时返回转发目标，否则暂存一条日志，暂存区已满时丢弃
+    private inline fun capture(type: Int, fill: WriteAction.() -> Unit): LogWriter? = synchronized(this) {
+        target?.let { return it }
+        if (count == records.size) {
+            if (dropped++ == 0) droppedType = type
+            return null
+        }
+        val t = Thread.currentThread()
+        records[count++].apply {
+            flag = type
+            localTime = System.currentTimeMillis()
+            threadName = t.name
+            threadId = t.id
+            isMainThread = Looper.getMainLooper() == Looper.myLooper()
+            fill()
+        }
+        return null
+    }
+
+    override fun write(log: String, type: Int) {
+        if (log.isEmpty()) return
+        this.capture(type) { this.log = log }?.write(log, type)
+    }
+
+    override fun write(log: String, type: Int, tr: Throwable) {
+        this.capture(type) { this.log = log; defer(tr) }?.write(log, type, tr)
+    }
+
+    override fun write(type: Int, pattern: String, arg: Any?) {
+        this.capture(type) { defer(pattern).arg(arg) }?.write(type, pattern, arg)
+    }
+
+    override fun write(type: Int, pattern: String, arg: Long) {
+        this.capture(type) { defer(pattern).arg(arg) }?.write(type, pattern, arg)
+    }
+
+    override fun write(type: Int, pattern: String, arg1: Any?, arg2: Any?) {
+        this.capture(type) { defer(pattern).arg(arg1).arg(arg2) }?.write(type, pattern, arg1, arg2)
+    }
+
+    override fun write(type: Int, pattern: String, arg1: Any?, arg2: Long) {
+        this.capture(type) { defer(pattern).arg(arg1).arg(arg2) }?.write(type, pattern, arg1, arg2)
+    }
+
+    override fun write(type: Int, pattern: String, arg1: Long, arg2: Long) {
+        this.capture(type) { defer(pattern).arg(arg1).arg(arg2) }?.write(type, pattern, arg1, arg2)
+    }
+
+    override fun write(type: Int, pattern: String, args: Array<out Any?>) {
+        this.capture(type) { defer(pattern, args) }?.write(type, pattern, args)
+    }
+
+    override fun write(type: Int, supplier: LogSupplier) {
+        this.capture(type) { defer(supplier) }?.write(type, supplier)
+    }
+
+    /**
+     * 将暂存的日志按调用顺序转交给日志控制器，之后的调用直接转发
+     *
+     * @param center 已启动的日志控制器
+     */
+    fun replayTo(center: LogControlCenter) {
+        this.replayTo(center) { center.replay(it) }
+    }
+
+    /**
+     * 将暂存的日志按调用顺序转交，之后的调用直接转发给[target]
+     *
+     * @param target 转发目标
+     * @param replay 转交一条暂存的日志
+     */
+    @Synchronized
+    fun replayTo(target: LogWriter, replay: (WriteAction) -> Unit) {
+        if (null != this.target) return
+        for (i in 0 until count) replay(records[i])
+        if (dropped > 0) target.write("初始化之前暂存区已满，丢弃了${dropped}条日志", droppedType)
+        count = 0
+        dropped = 0
+        this.target = target
+    }
+}
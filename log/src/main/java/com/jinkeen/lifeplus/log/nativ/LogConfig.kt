@@ -2,9 +2,20 @@ package com.jinkeen.lifeplus.log.nativ
 
 import android.os.Parcelable
 import com.jinkeen.lifeplus.log.BuildConfig
+import com.jinkeen.lifeplus.log.nativ.LogConfig.Companion.DEFAULT_BATCH_BYTES
+import com.jinkeen.lifeplus.log.nativ.LogConfig.Companion.DEFAULT_BATCH_COUNT
+import com.jinkeen.lifeplus.log.nativ.LogConfig.Companion.DEFAULT_BLOCK_TIMEOUT
+import com.jinkeen.lifeplus.log.nativ.LogConfig.Companion.DEFAULT_CRASH_DRAIN_TIMEOUT
 import com.jinkeen.lifeplus.log.nativ.LogConfig.Companion.DEFAULT_DAY
+import com.jinkeen.lifeplus.log.nativ.LogConfig.Companion.DEFAULT_DEDUPE_CAPACITY
 import com.jinkeen.lifeplus.log.nativ.LogConfig.Companion.DEFAULT_FILE_SIZE
+import com.jinkeen.lifeplus.log.nativ.LogConfig.Companion.DEFAULT_FLUSH_COALESCE
 import com.jinkeen.lifeplus.log.nativ.LogConfig.Companion.DEFAULT_MIN_SDCARD_SIZE
+import com.jinkeen.lifeplus.log.nativ.LogConfig.Companion.DEFAULT_PRIORITY_WEIGHT
+import com.jinkeen.lifeplus.log.nativ.LogConfig.Companion.DEFAULT_QUEUE_CAPACITY
+import com.jinkeen.lifeplus.log.nativ.LogConfig.Companion.DEFAULT_STACK_CAUSE_LIMIT
+import com.jinkeen.lifeplus.log.nativ.LogConfig.Companion.DEFAULT_STACK_FRAME_LIMIT
+import com.jinkeen.lifeplus.log.nativ.LogConfig.Companion.DEFAULT_SUPPRESS_SUMMARY_INTERVAL
 import kotlinx.parcelize.Parcelize
 
 /**
@@ -17,7 +28,32 @@ import kotlinx.parcelize.Parcelize
  * @property mMaxFile 一个日志文件的大小，默认=[DEFAULT_FILE_SIZE]
  * @property saveDays 保留日志的天数，默认=[DEFAULT_DAY]
  * @property mMinSDCard 设备SD卡的容量若小于该值则不写入日志文件，默认=[DEFAULT_MIN_SDCARD_SIZE]
+ * @property mMaxDirSize 日志目录允许占用的最大字节数，达到后不再写入日志文件，同时会从最早的日志文件开始清理，小于等于0表示不限制，默认=0
+ * @property mRetentionTiers 指定日志类型的保留毫秒数，未指定的类型保留[saveDays]，如：`mapOf(500 to 30 * DAY)`
  * @property isDebug 当前是否为`Debug`环境
+ * @property mBatchCount 写入线程每次批量写入的最大日志条数，默认=[DEFAULT_BATCH_COUNT]
+ * @property mBatchBytes 写入线程每次批量写入的最大日志字节数（估算值），默认=[DEFAULT_BATCH_BYTES]
+ * @property mQueueCapacity 待写入日志队列的容量，默认=[DEFAULT_QUEUE_CAPACITY]
+ * @property mQueueStripes 待写入日志队列的分段数，多线程大量写入日志时可适当增加以减少竞争，默认=1
+ * @property mOverflowPolicy 待写入日志队列已满时的处理策略，默认=[OverflowPolicy.DROP_OLDEST]
+ * @property mBlockTimeout 策略为[OverflowPolicy.BLOCK]时的最长等待毫秒数，默认=[DEFAULT_BLOCK_TIMEOUT]
+ * @property mPriorityTypes 优先写入的日志类型，带有异常信息的日志同样优先写入；同时也是[OverflowPolicy.DROP_BY_PRIORITY]中优先保留的类型
+ * @property mPriorityWeight 普通日志积压时，写入线程每处理该数量的优先日志至少处理一条普通日志，默认=[DEFAULT_PRIORITY_WEIGHT]
+ * @property mStackFrameLimit 异常日志中每一层异常最多记录的堆栈帧数，默认=[DEFAULT_STACK_FRAME_LIMIT]
+ * @property mStackCauseLimit 异常日志中最多记录的`Caused by`层数，默认=[DEFAULT_STACK_CAUSE_LIMIT]
+ * @property mFlushCount 未强制写入的日志达到该条数时自动强制写入，0表示不启用，默认=0
+ * @property mFlushBytes 未强制写入的日志达到该字节数（估算值）时自动强制写入，0表示不启用，默认=0
+ * @property mFlushLatency 最早一条未强制写入的日志等待超过该毫秒数时自动强制写入，0表示不启用，默认=0
+ * @property mFlushTypes 写入这些类型的日志后立即强制写入，通常为错误类型
+ * @property mFlushCoalesce 两次主动强制写入之间的最短间隔毫秒数，间隔内的请求会被合并，默认=[DEFAULT_FLUSH_COALESCE]
+ * @property mCrashDrainTimeout 应用崩溃时排空待写入日志的最长毫秒数，默认=[DEFAULT_CRASH_DRAIN_TIMEOUT]
+ * @property mRateLimits 指定日志类型每秒最多写入的条数，超出的日志被丢弃，如：`mapOf(101 to 100)`
+ * @property mSampleRates 指定日志类型保留日志的比例，取值范围`(0, 1]`，如：`mapOf(101 to 0.1F)`
+ * @property mSuppressSummaryInterval 因限流或采样而被丢弃的日志，每隔该毫秒数按类型写入一条数量摘要，默认=[DEFAULT_SUPPRESS_SUMMARY_INTERVAL]
+ * @property mDedupeWindow 同一线程中类型与内容都相同的日志，在该毫秒数内重复出现时只写入一次，窗口结束时写入一条重复次数的摘要，默认为0即不折叠
+ * @property mDedupeCapacity 折叠重复日志时最多同时跟踪的日志条数，默认=[DEFAULT_DEDUPE_CAPACITY]
+ * @property mParseParallelism 上传前解析日志文件时同时解码数据块的线程数，所有文件合计不超过CPU核数，默认=1
+ * @property mIndexBytes 每写入该字节数（估算值）的日志额外强制写入一次，使底层库也能按该间隔记录索引；纯Java的实现每封装一个暂存区记录一条索引，不需要设置。默认为0即只按强制写入的策略写入
  */
 @Parcelize
 data class LogConfig(
@@ -28,7 +64,32 @@ data class LogConfig(
     val mMaxFile: Long = DEFAULT_FILE_SIZE,
     val saveDays: Long = DEFAULT_DAY,
     val mMinSDCard: Long = DEFAULT_MIN_SDCARD_SIZE,
-    val isDebug: Boolean = false
+    val mMaxDirSize: Long = 0L,
+    val mRetentionTiers: Map<Int, Long> = emptyMap(),
+    val isDebug: Boolean = false,
+    val mBatchCount: Int = DEFAULT_BATCH_COUNT,
+    val mBatchBytes: Int = DEFAULT_BATCH_BYTES,
+    val mQueueCapacity: Int = DEFAULT_QUEUE_CAPACITY,
+    val mQueueStripes: Int = 1,
+    val mOverflowPolicy: OverflowPolicy = OverflowPolicy.DROP_OLDEST,
+    val mBlockTimeout: Long = DEFAULT_BLOCK_TIMEOUT,
+    val mPriorityTypes: IntArray = intArrayOf(),
+    val mPriorityWeight: Int = DEFAULT_PRIORITY_WEIGHT,
+    val mStackFrameLimit: Int = DEFAULT_STACK_FRAME_LIMIT,
+    val mStackCauseLimit: Int = DEFAULT_STACK_CAUSE_LIMIT,
+    val mFlushCount: Int = 0,
+    val mFlushBytes: Long = 0L,
+    val mFlushLatency: Long = 0L,
+    val mFlushTypes: IntArray = intArrayOf(),
+    val mFlushCoalesce: Long = DEFAULT_FLUSH_COALESCE,
+    val mCrashDrainTimeout: Long = DEFAULT_CRASH_DRAIN_TIMEOUT,
+    val mRateLimits: Map<Int, Int> = emptyMap(),
+    val mSampleRates: Map<Int, Float> = emptyMap(),
+    val mSuppressSummaryInterval: Long = DEFAULT_SUPPRESS_SUMMARY_INTERVAL,
+    val mDedupeWindow: Long = 0L,
+    val mDedupeCapacity: Int = DEFAULT_DEDUPE_CAPACITY,
+    val mParseParallelism: Int = 1,
+    val mIndexBytes: Long = 0L
 ) : Parcelable {
 
     companion object {
@@ -40,6 +101,17 @@ data class LogConfig(
         private const val DEFAULT_DAY = 7 * DAY // 默认保留日志的天数
         private const val DEFAULT_FILE_SIZE = 10 * M // 默认一个日志文件的大小
         private const val DEFAULT_MIN_SDCARD_SIZE = 50 * M // 设备SD卡的容量若小于该值则不写入日志文件
+        private const val DEFAULT_BATCH_COUNT = 256 // 默认每批次最多写入的日志条数
+        private const val DEFAULT_BATCH_BYTES = 64 * 1024 // 默认每批次最多写入的日志字节数
+        private const val DEFAULT_QUEUE_CAPACITY = 8192 // 默认待写入日志队列的容量
+        private const val DEFAULT_BLOCK_TIMEOUT = 10L // 默认队列已满时的最长等待毫秒数
+        private const val DEFAULT_PRIORITY_WEIGHT = 8 // 默认每处理多少条优先日志至少处理一条普通日志
+        private const val DEFAULT_STACK_FRAME_LIMIT = 64 // 默认每一层异常最多记录的堆栈帧数
+        private const val DEFAULT_STACK_CAUSE_LIMIT = 8 // 默认最多记录的Caused by层数
+        private const val DEFAULT_FLUSH_COALESCE = 200L // 默认两次主动强制写入之间的最短间隔毫秒数
+        private const val DEFAULT_CRASH_DRAIN_TIMEOUT = 200L // 默认崩溃时排空待写入日志的最长毫秒数
+        private const val DEFAULT_SUPPRESS_SUMMARY_INTERVAL = 10 * 1000L // 默认写入限流摘要的间隔毫秒数
+        private const val DEFAULT_DEDUPE_CAPACITY = 256 // 默认折叠重复日志时最多跟踪的日志条数
     }
 
     /**
@@ -0,0 +1,415 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import android.text.TextUtils
+import android.util.ArrayMap
+import android.util.Log
+import com.jinkeen.lifeplus.log.LogSupplier
+import com.jinkeen.lifeplus.log.listener.OnLogProtocolStatusListener
+import com.jinkeen.lifeplus.log.parser.LogKey
+import com.jinkeen.lifeplus.log.parser.LogKeyProvider
+import com.jinkeen.lifeplus.log.parser.LogParserProtocol
+import com.jinkeen.lifeplus.log.parser.LogRecordFilter
+import com.jinkeen.lifeplus.log.util.escapeTimemillis
+import kotlinx.coroutines.*
+import java.io.ByteArrayOutputStream
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 本地日志操作控制器中心
+ * --
+ * 负责具体的日志写入，本地日志文件控制操作。直接由[LogConfig]创建，[start]返回后即可写入日志，
+ * 可在应用进程中直接使用，也可由[LogControlCenterService]托管。
+ *
+ * @property config 日志配置
+ */
+class LogControlCenter(private val config: LogConfig) : LogWriter {
+
+    companion object {
+
+        private const val TAG = "LogControlCenter"
+
+        /** 结束时等待写入线程退出的最长毫秒数 */
+        private const val QUIT_TIMEOUT = 5000L
+    }
+
+    private val worker = FileWorker(config)
+    private val flushPolicy = FlushPolicy(config)
+    private val limiter = RateLimiter(config.mRateLimits, config.mSampleRates)
+    private val deduplicator = LogDeduplicator(config.mDedupeWindow, config.mDedupeCapacity)
+    private val engine = LogEngine("log_native_write", config, { this.idle(it) }) { this.consume(it) }
+
+    /**
+     * 启动文件维护与日志写入线程
+     */
+    fun start() {
+        worker.start()
+        engine.start()
+    }
+
+    /**
+     * TODO
+     *
+     * @param log
+     * @param type
+     */
+    override fun write(log: String, type: Int) {
+        if (config.isDebug) Log.d(TAG, "接收到一条新的日志内容：log=${log}, type=${type}")
+        if (TextUtils.isEmpty(log) || !limiter.tryAcquire(type)) return
+        engine.write(log, type)
+    }
+
+    /**
+     * 写入一条带有异常信息的日志，异常堆栈在写入线程中渲染
+     *
+     * @param log 日志内容
+     * @param type 日志类型
+     * @param tr 异常对象
+     */
+    override fun write(log: String, type: Int, tr: Throwable) {
+        if (!limiter.tryAcquire(type)) return
+        engine.offer(engine.obtainWrite(type).apply { writeAction.log = log; writeAction.defer(tr) })
+    }
+
+    /**
+     * 写入一条延迟格式化的日志，格式化工作在写入线程中完成
+     *
+     * @param type 日志类型
+     * @param pattern 日志格式，参见[LogFormatter]
+     * @param arg 参数
+     */
+    override fun write(type: Int, pattern: String, arg: Any?) {
+        if (!limiter.tryAcquire(type)) return
+        engine.offer(engine.obtainWrite(type).apply { writeAction.defer(pattern).arg(arg) })
+    }
+
+    override fun write(type: Int, pattern: String, arg: Long) {
+        if (!limiter.tryAcquire(type)) return
+        engine.offer(engine.obtainWrite(type).apply { writeAction.defer(pattern).arg(arg) })
+    }
+
+    override fun write(type: Int, pattern: String, arg1: Any?, arg2: Any?) {
+        if (!limiter.tryAcquire(type)) return
+        engine.offer(engine.obtainWrite(type).apply { writeAction.defer(pattern).arg(arg1).arg(arg2) })
+    }
+
+    override fun write(type: Int, pattern: String, arg1: Any?, arg2: Long) {
+        if (!limiter.tryAcquire(type)) return
+        engine.offer(engine.obtainWrite(type).apply { writeAction.defer(pattern).arg(arg1).arg(arg2) })
+    }
+
+    override fun write(type: Int, pattern: String, arg1: Long, arg2: Long) {
+        if (!limiter.tryAcquire(type)) return
+        engine.offer(engine.obtainWrite(type).apply { writeAction.defer(pattern).arg(arg1).arg(arg2) })
+    }
+
+    override fun write(type: Int, pattern: String, args: Array<out Any?>) {
+        if (!limiter.tryAcquire(type)) return
+        engine.offer(engine.obtainWrite(type).apply { writeAction.defer(pattern, args) })
+    }
+
+    /**
+     * 写入一条延迟生成的日志，[supplier]将在写入线程中被调用
+     *
+     * @param type 日志类型
+     * @param supplier 日志内容的生成者
+     */
+    override fun write(type: Int, supplier: LogSupplier) {
+        if (!limiter.tryAcquire(type)) return
+        engine.offer(engine.obtainWrite(type).apply { writeAction.defer(supplier) })
+    }
+
+    /**
+     * 转交初始化之前暂存的日志，保留其原有的时间与线程信息
+     *
+     * @param w 暂存的日志，内容转交后被清空
+     */
+    internal fun replay(w: WriteAction) {
+        if (!limiter.tryAcquire(w.flag)) {
+            w.reset()
+            return
+        }
+        engine.offer(engine.obtainWrite(w.flag).apply { w.moveTo(writeAction) })
+    }
+
+    /**
+     * TODO
+     *
+     */
+    fun flush() {
+        if (config.isDebug) Log.d(TAG, "接收到一条强制写入事件")
+        engine.flush()
+    }
+
+    private val protocol = LogProtocol()
+
+    // 连续的写入事件合并为一个批次提交，只会在写入线程中使用
+    private val pending = ArrayList<WriteAction>()
+
+    // 延迟格式化日志时复用的缓冲区，只会在写入线程中使用
+    private val formatBuilder = StringBuilder()
+    private val stackRenderer by lazy { StackTraceRenderer(config.mStackFrameLimit, config.mStackCauseLimit) }
+
+    // LogProtocol在进程中只有一个，重新创建控制器后需要重新设置状态回报与调试模式
+    private var isPrepared = false
+
+    // 在写入线程中装载底层库并初始化，写入线程启动后即进行，不占用调用者的线程
+    private fun prepare(): Boolean {
+        if (!isPrepared) {
+            protocol.setOnLogProtocolStatusListener(listener)
+            // 先设置调试模式，初始化过程中的日志同样只在调试模式下输出
+            protocol.debug(config.isDebug)
+            if (!protocol.isInitialized()) {
+                Log.d(TAG, "对LogProtocol进行初始化")
+                if (config.isValid()) protocol.init(
+                    config.cachePath,
+                    config.logDirPath,
+                    config.mMaxFile.toInt(),
+                    String(config.mEncryptKey16),
+                    String(config.mEncryptIv16)
+                )
+            }
+            isPrepared = protocol.isInitialized()
+        }
+        return protocol.isInitialized()
+    }
+
+    // 只会在写入线程中被调用
+    private fun consume(batch: List<LogAction>) {
+        if (!this.prepare()) return
+        if (config.isDebug) Log.d(TAG, "准备进行批次事件，共${batch.size}个")
+        for (i in batch.indices) {
+            val action = batch[i]
+            when (action.action) {
+                Action.WRITE -> action.writeAction.let {
+                    if (it.resolve(formatBuilder, stackRenderer) && deduplicator.accept(it, pending)) pending.add(it)
+                }
+                Action.FLUSH -> flushPolicy.request()
+                Action.SEND -> {}
+            }
+        }
+        this.summarize(System.currentTimeMillis())
+        if (deduplicator.isEnabled()) deduplicator.expire(System.currentTimeMillis(), pending)
+        this.commit()
+        this.flushIfNeeded(System.currentTimeMillis())
+    }
+
+    // 下一次写入限流摘要的时间
+    private var nextSummary = 0L
+
+    // 定期为每个被限流或采样抑制的类型写入一条摘要
+    private fun summarize(now: Long) {
+        if (!limiter.isEnabled() || now < nextSummary) return
+        nextSummary = now + config.mSuppressSummaryInterval
+        limiter.drainSuppressed { type, count ->
+            pending.add(WriteAction("已抑制${count}条类型为${type}的日志").apply {
+                flag = type
+                localTime = now
+                threadName = Thread.currentThread().name
+                threadId = Thread.currentThread().id
+            })
+        }
+    }
+
+    // 队列为空时检查是否到达强制写入的时间，返回下一次检查的等待时间
+    private fun idle(isQuit: Boolean): Long {
+        if (!this.prepare()) return -1L
+        val now = System.currentTimeMillis()
+        if (limiter.isEnabled()) this.summarize(now)
+        // 退出前写入全部重复日志的摘要
+        val expire = if (deduplicator.isEnabled()) deduplicator.expire(if (isQuit) Long.MAX_VALUE else now, pending) else -1L
+        this.commit()
+        // 退出前不再合并，立即执行尚未完成的强制写入请求
+        if (isQuit && flushPolicy.isRequested()) this.flush(now) else this.flushIfNeeded(now)
+        var delay = earliest(flushPolicy.delay(now), expire)
+        if (limiter.isEnabled()) delay = earliest(delay, maxOf(0L, nextSummary - now))
+        return delay
+    }
+
+    // 取两个等待时间中较早的一个，`-1`表示没有需要等待的条件
+    private fun earliest(a: Long, b: Long): Long = when {
+        a < 0 -> b
+        b < 0 -> a
+        else -> minOf(a, b)
+    }
+
+    private fun flushIfNeeded(now: Long) {
+        if (flushPolicy.shouldFlush(now)) this.flush(now)
+    }
+
+    private fun flush(now: Long) {
+        worker.flush(protocol)
+        flushPolicy.onFlushed(now)
+    }
+
+    private fun commit() {
+        if (pending.isEmpty()) return
+        try {
+            worker.write(protocol, pending)
+            val now = System.currentTimeMillis()
+            for (i in pending.indices) flushPolicy.onWrite(pending[i], now)
+        } finally {
+            pending.clear()
+        }
+    }
+
+    /**
+     * 应用崩溃时在崩溃线程中记录异常，并将待写入的日志全部写入文件，总耗时不超过[LogConfig.mCrashDrainTimeout]
+     *
+     * @param type 崩溃日志的类型
+     * @param t 崩溃的线程
+     * @param tr 未捕获的异常
+     */
+    fun drainOnCrash(type: Int, t: Thread, tr: Throwable) {
+        val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.mCrashDrainTimeout)
+        // 先排空已有的日志，为崩溃日志腾出空间
+        engine.drain(config.mCrashDrainTimeout, TimeUnit.MILLISECONDS)
+        // 崩溃日志不受限流影响
+        engine.offer(engine.obtainWrite(type).apply { writeAction.log = "应用崩溃，线程：${t.name}"; writeAction.defer(tr) })
+        engine.flush()
+        val left = deadline - System.nanoTime()
+        if (left <= 0 || !engine.drain(left, TimeUnit.NANOSECONDS)) Log.w(TAG, "崩溃时未能在限定时间内写入全部日志")
+    }
+
+    /**
+     * 设置日志类型的限流，可在运行时修改
+     *
+     * @param type 日志类型
+     * @param perSecond 每秒最多写入的日志条数，小于等于0表示不限流
+     */
+    fun setRateLimit(type: Int, perSecond: Int) {
+        limiter.setRate(type, perSecond)
+    }
+
+    /**
+     * 设置日志类型的采样比例，可在运行时修改
+     *
+     * @param type 日志类型
+     * @param rate 保留日志的比例，大于等于1表示全部保留
+     */
+    fun setSampleRate(type: Int, rate: Float) {
+        limiter.setSampleRate(type, rate)
+    }
+
+    // 配置中当前使用的密钥，以及更换前使用过的密钥
+    private val configKey by lazy { LogKey("", config.mEncryptKey16, config.mEncryptIv16) }
+
+    @Volatile
+    private var keyProvider: LogKeyProvider? = null
+
+    /**
+     * 设置解析日志文件时额外使用的密钥，用于解析更换密钥之前写入的日志
+     *
+     * @param provider 提供更换前使用过的密钥，配置中的当前密钥总是最先尝试
+     */
+    fun setKeyProvider(provider: LogKeyProvider?) {
+        keyProvider = provider
+    }
+
+    private fun keys(): LogKeyProvider {
+        val provider = keyProvider ?: return LogKeyProvider { listOf(configKey) }
+        return LogKeyProvider { listOf(configKey) + provider.keys }
+    }
+
+    /**
+     * 因待写入队列已满而被丢弃的日志总数
+     *
+     * @see LogConfig.mOverflowPolicy
+     */
+    fun droppedCount(): Long = engine.droppedCount()
+
+    /**
+     * 结束本地的日志写入任务，将不再接收新的日志信息
+     * --
+     * 等待写入线程处理完已接收的日志后返回，最长等待[QUIT_TIMEOUT]毫秒，之后可以重新创建控制器。
+     *
+     * @param isFlush 是否在结束前将缓存队列中的日志强制写入到日志文件
+     */
+    fun quit(isFlush: Boolean) {
+        engine.quit(isFlush)
+        // 写入线程仍在运行时不能关闭协议，以免与其同时写入
+        if (engine.awaitTermination(QUIT_TIMEOUT, TimeUnit.MILLISECONDS)) protocol.close()
+        else Log.w(TAG, "写入线程未能在限定时间内退出")
+        worker.stop()
+        Log.d(TAG, "停止本地的日志写入")
+    }
+
+    private var listener: OnLogProtocolStatusListener? = null
+
+    fun setOnLogProtocolStatusListener(listener: OnLogProtocolStatusListener?) {
+        this.listener = listener
+    }
+
+    private val sTaskIDs = AtomicLong(1000)
+    private val sTaskArray = ArrayMap<Long, Job>()
+
+    /**
+     * 立即上传指定的日志信息到服务端，将按照具体的时间范围进行精细化的筛选。
+     *
+     * @param types 指定要上传的日志类型。当筛选时间间隔超过24小时，将忽略该参数的作用
+     * @param beginTime 开始的时间戳，若超过本地已记录的最早日志时间，将自动按本地记录的最早时间来算。
+     * @param endTime 结束的时间戳，若超过本地记录的最晚日志时间，将自动按照本地记录的最晚日志时间来算。
+     */
+    fun up(types: IntArray, beginTime: Long, endTime: Long): Long {
+        val rKeys = hashSetOf<Long>()
+        sTaskArray.entries.forEach { if (!it.value.isActive || it.value.isCompleted) rKeys.add(it.key) }
+        sTaskArray.removeAll(rKeys)
+        val id = sTaskIDs.getAndIncrement()
+        sTaskArray[id] = CoroutineScope(Dispatchers.IO).launch {
+            /*
+             * 日志上传应该有两种方法
+             * 1，少量的日志内容，直接传输字符串，以节省流量开支
+             * 2，大量的日志内容，应上传对应的文件
+             *
+             * 当开始到结束时间的间隔在24小时以内，首选选择字符串上传，否则首选选择文件上传。
+             */
+            val logs = worker.filterFiles(escapeTimemillis(beginTime), escapeTimemillis(endTime))
+            if (endTime - beginTime < LogConfig.DAY) {
+                // 24小时以内，最多只有两个本地日志文件
+                // {"c":"Log content-21660","f":101,"l":1640336274432,"n":"log","i":188,"m":false}
+                val upLog = try {
+                    val keys = this@LogControlCenter.keys()
+                    // 只读取类型与时间进行筛选，被保留的日志直接复制原始文本
+                    val filter = LogRecordFilter { type, time -> time in beginTime..endTime && (types.isEmpty() || types.contains(type)) }
+                    val out = ByteArrayOutputStream()
+                    for (file in logs) {
+                        if (!isActive) break
+                        val parser = LogParserProtocol(file, keys).apply { parallelism = config.mParseParallelism }
+                        // 有索引时只读取可能符合条件的数据块
+                        parser.useIndex(beginTime, endTime, types)
+                        parser.scan(filter) { json, offset, length ->
+                            out.write(json, offset, length)
+                            isActive
+                        }
+                    }
+                    out.toString(Charsets.UTF_8.name())
+                } catch (e: Exception) {
+                    Log.e(TAG, "筛选日志时出现异常。", e)
+                    ""
+                }
+                Log.d(TAG, "要上传的日志全部数据：\n${upLog}")
+                if (!isActive || upLog.isEmpty()) return@launch
+
+                // 执行上传动作.....
+
+            } else {
+                // 整24小时或大于24小时，直接上传日志文件
+            }
+        }
+        return id
+    }
+
+    /**
+     * 停止正在进行中的上传任务，当 `taskId<0` 时，停止全部任务
+     *
+     * @param taskId 任务ID
+     * @see up
+     */
+    fun stop(taskId: Long) {
+        if (!sTaskArray.containsKey(taskId)) return
+        if (sTaskArray[taskId]?.isActive == true) {
+            sTaskArray[taskId]?.cancel("被强行停止。")
+            sTaskArray.remove(taskId)
+        }
+    }
+}
\ No newline at end of file
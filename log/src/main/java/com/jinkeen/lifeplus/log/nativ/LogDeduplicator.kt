@@ -0,0 +1,119 @@
+package com.jinkeen.lifeplus.log.nativ
+
+/**
+ * 重复日志折叠
+ * --
+ * 以`(类型, 内容, 线程)`识别同一条日志。一条日志首次出现时正常写入，之后[window]毫秒内的重复日志不再写入，
+ * 只累加次数；窗口结束时写入一条摘要，记录重复次数与首次、最后一次重复的时间。
+ *
+ * 记录表是固定容量的直接映射表，哈希冲突时新日志替换旧日志（旧日志若有重复先写入摘要），因此内存占用有上限。
+ * 只会在写入线程中使用。
+ *
+ * @param window 折叠的时间窗口（毫秒），小于等于0表示不折叠
+ * @param capacity 记录表的容量，会向上取整为2的幂
+ */
+internal class LogDeduplicator(private val window: Long, capacity: Int = DEFAULT_CAPACITY) {
+
+    companion object {
+
+        /** 默认记录表的容量 */
+        const val DEFAULT_CAPACITY = 256
+    }
+
+    private class Entry {
+        var hash = 0
+        var type = 0
+        var threadId = 0L
+        var threadName = ""
+        var isMainThread = false
+        var log: String? = null
+
+        // 首次出现的时间
+        var first = 0L
+
+        // 窗口内的重复次数与最后一次重复的时间
+        var count = 0
+        var last = 0L
+    }
+
+    private val slots = Array(Integer.highestOneBit(maxOf(1, capacity - 1)) shl 1) { Entry() }
+    private val mask = slots.size - 1
+
+    // 有重复次数的记录中最早结束窗口的时间
+    private var nextExpire = Long.MAX_VALUE
+
+    /** 是否启用了重复日志折叠 */
+    fun isEnabled(): Boolean = window > 0
+
+    /**
+     * 检查一条日志是否需要写入
+     *
+     * @param w 已生成内容的日志
+     * @param out 被替换的记录若有重复，其摘要会先追加到这里
+     * @return `false`表示该日志是窗口内的重复日志，不需要写入
+     */
+    fun accept(w: WriteAction, out: MutableList<WriteAction>): Boolean {
+        if (window <= 0) return true
+        val log = w.log
+        val hash = hash(w.flag, log, w.threadId)
+        val entry = slots[hash and mask]
+        if (null != entry.log && entry.hash == hash && entry.type == w.flag && entry.threadId == w.threadId
+            && w.localTime - entry.first < window && entry.log == log
+        ) {
+            if (entry.count++ == 0) nextExpire = minOf(nextExpire, entry.first + window)
+            entry.last = w.localTime
+            return false
+        }
+        this.summarize(entry, out)
+        entry.hash = hash
+        entry.type = w.flag
+        entry.threadId = w.threadId
+        entry.threadName = w.threadName
+        entry.isMainThread = w.isMainThread
+        entry.log = log
+        entry.first = w.localTime
+        return true
+    }
+
+    /**
+     * 为窗口已结束的记录写入摘要
+     *
+     * @param now 当前时间，传入[Long.MAX_VALUE]时写入全部摘要
+     * @param out 摘要追加到这里
+     * @return 距离下一个窗口结束的毫秒数，没有需要等待的记录时返回`-1`
+     */
+    fun expire(now: Long, out: MutableList<WriteAction>): Long {
+        if (nextExpire == Long.MAX_VALUE) return -1L
+        if (now >= nextExpire) {
+            var next = Long.MAX_VALUE
+            for (entry in slots) {
+                if (entry.count == 0) continue
+                val end = entry.first + window
+                if (now >= end) {
+                    this.summarize(entry, out)
+                    entry.log = null
+                } else if (end < next) next = end
+            }
+            nextExpire = next
+            if (next == Long.MAX_VALUE) return -1L
+        }
+        return nextExpire - now
+    }
+
+    private fun summarize(entry: Entry, out: MutableList<WriteAction>) {
+        if (entry.count == 0) return
+        out.add(WriteAction("上一条日志重复了${entry.count}次，首次：${entry.first}，最后：${entry.last}，内容：${entry.log}").also {
+            it.flag = entry.type
+            it.threadId = entry.threadId
+            it.threadName = entry.threadName
+            it.isMainThread = entry.isMainThread
+            it.localTime = entry.last
+        })
+        entry.count = 0
+    }
+
+    private fun hash(type: Int, log: String, threadId: Long): Int {
+        val h = (type * 31 + log.hashCode()) * 31 + (threadId xor (threadId ushr 32)).toInt()
+        return h xor (h ushr 16)
+    }
+}
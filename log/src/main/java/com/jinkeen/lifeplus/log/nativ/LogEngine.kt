@@ -0,0 +1,439 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import android.os.Looper
+import android.util.Log
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.LockSupport
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.thread
+import kotlin.concurrent.withLock
+
+/**
+ * 日志写入引擎
+ * --
+ * 任意线程均可投递日志事件，由唯一的写入线程负责消费。写入线程在队列为空时挂起（不占用`CPU`），
+ * 有新事件投递时被唤醒，并持续消费直至队列为空。
+ *
+ * 每次唤醒后按批次消费：一个批次最多包含[LogConfig.mBatchCount]个事件或约[LogConfig.mBatchBytes]字节的日志内容，以分摊每条日志的调用开销。
+ *
+ * 待写入的事件保存在容量为[LogConfig.mQueueCapacity]的有界队列中，队列已满时按[LogConfig.mOverflowPolicy]处理。
+ * 控制类事件（如强制写入）不受策略影响：尚未处理的强制写入请求合并为一个，始终会被接收；其他控制类事件在通道已满时被拒绝，不会被丢弃。
+ *
+ * 事件记录在回收池、队列与写入批次之间循环使用，稳定状态下通过[write]投递日志不会创建新的对象。
+ *
+ * 当[LogConfig.mQueueStripes]大于1时，队列被拆分为多个分段，每个生产线程固定投递到其中一个分段，以减少多线程之间的竞争。
+ * 写入线程从各分段的队首中按时间先后合并：同一线程的日志始终保持投递顺序，不同线程的日志在同一批次内按时间排序。
+ *
+ * 事件按优先级分为三条通道：控制类事件（如强制写入）、优先日志（[LogConfig.mPriorityTypes]中的类型与带有异常信息的日志）以及普通日志。
+ * 写入线程总是先处理控制类事件，之后每处理[LogConfig.mPriorityWeight]条优先日志至少处理一条普通日志，
+ * 因此大量普通日志积压时，优先日志的等待时间仍然有限，普通日志也不会被完全阻塞。
+ *
+ * 应用崩溃时可通过[drain]在崩溃线程中直接消费队列中剩余的事件，与写入线程互斥，不会打乱写入顺序。
+ *
+ * @property name 写入线程的名称
+ * @property config 日志配置
+ * @property onIdle 队列为空、写入线程准备挂起时在写入线程中调用，返回最长挂起的毫秒数，小于0表示一直挂起直到有新的事件；
+ * 写入线程退出前会以`isQuit=true`再调用一次
+ * @property consumer 具体消费一个批次日志事件的动作，只会在写入线程中被调用，且调用结束后批次即被复用
+ */
+internal class LogEngine(
+    private val name: String,
+    private val config: LogConfig,
+    private val onIdle: (isQuit: Boolean) -> Long = { -1L },
+    private val consumer: (List<LogAction>) -> Unit
+) {
+
+    companion object {
+
+        private const val TAG = "LogEngine"
+
+        /** 阻塞策略下每次等待的纳秒数 */
+        private const val BLOCK_PARK_NANOS = 50_000L
+
+        /** 控制类事件通道的容量 */
+        private const val CONTROL_CAPACITY = 64
+
+        /** 优先日志通道的最小容量 */
+        private const val MIN_PRIORITY_CAPACITY = 64
+
+        // 每个线程的名称与ID只获取一次
+        private val threadInfo = object : ThreadLocal<ThreadInfo>() {
+            override fun initialValue(): ThreadInfo = Thread.currentThread().let {
+                ThreadInfo(it.name, it.id, Looper.getMainLooper() == Looper.myLooper())
+            }
+        }
+    }
+
+    private class ThreadInfo(val name: String, val id: Long, val isMain: Boolean)
+
+    /**
+     * 队列分段，拥有独立的有界队列与事件记录回收池
+     *
+     * @param capacity 队列的期望容量
+     */
+    private inner class Stripe(capacity: Int) {
+
+        val logCacheQueue = LogRingBuffer(capacity)
+
+        // 按优先级丢弃时，超过该使用量后只接收优先类型
+        val highWater = logCacheQueue.capacity / 4 * 3
+
+        // 事件记录回收池。槽位一次性分配，记录按需创建，数量不会超过各通道容量与一个批次之和
+        val pool = LogRingBuffer(logCacheQueue.capacity + priorityLane.capacity + controlLane.capacity + batchCount)
+    }
+
+    private val batchCount = config.mBatchCount
+    private val batchBytes = config.mBatchBytes
+
+    private val priorityTypes = config.mPriorityTypes.sortedArray()
+    private val priorityWeight = maxOf(1, config.mPriorityWeight)
+
+    private val controlLane = LogRingBuffer(CONTROL_CAPACITY)
+    private val priorityLane = LogRingBuffer(maxOf(MIN_PRIORITY_CAPACITY, config.mQueueCapacity / 8))
+
+    private val stripes = maxOf(1, config.mQueueStripes).let { count ->
+        Array(count) { Stripe(maxOf(1, config.mQueueCapacity / count)) }
+    }
+
+    // 因队列已满而被拒绝的新日志数量
+    private val rejected = AtomicLong(0)
+
+    // 为腾出空间而被丢弃的早期日志数量
+    private val evicted = AtomicLong(0)
+
+    private val isQuit = AtomicBoolean(false)
+
+    // 控制通道中是否已有尚未处理的强制写入事件，之后的请求与其合并
+    private val isFlushPending = AtomicBoolean(false)
+
+    // 停止时是否要求追加一次强制写入
+    @Volatile
+    private var isQuitFlush = false
+
+    // 写入线程是否已消费完停止前的全部事件并准备退出，之后进入队列的事件不会再被消费。只在持有consumeLock时修改
+    @Volatile
+    private var isTerminated = false
+
+    // 写入线程是否已挂起（或正准备挂起），生产者据此决定是否需要唤醒
+    private val isParked = AtomicBoolean(false)
+
+    @Volatile
+    internal var writer: Thread? = null
+        private set
+
+    /**
+     * 启动写入线程，重复调用无效
+     */
+    fun start() {
+        if (writer != null) return
+        synchronized(this) {
+            if (writer == null) writer = thread(start = true, name = name) { this.execute() }
+        }
+    }
+
+    // 当前线程固定对应的队列分段
+    private fun stripeIndex(info: ThreadInfo): Int = if (stripes.size == 1) 0 else (info.id % stripes.size).toInt()
+
+    private fun obtain(action: Action): LogAction {
+        val info = threadInfo.get()!!
+        val index = this.stripeIndex(info)
+        val a = stripes[index].pool.poll()?.also { it.action = action } ?: LogAction(action)
+        a.stripe = index
+        a.writeAction.apply {
+            localTime = System.currentTimeMillis()
+            isMainThread = info.isMain
+            threadId = info.id
+            threadName = info.name
+        }
+        return a
+    }
+
+    private fun recycle(action: LogAction) {
+        action.writeAction.reset()
+        stripes[action.stripe].pool.offer(action)
+    }
+
+    /**
+     * 投递一条日志
+     *
+     * @param log 日志内容
+     * @param type 日志类型
+     * @return `true`表示投递成功
+     */
+    fun write(log: String, type: Int): Boolean {
+        val action = this.obtainWrite(type)
+        action.writeAction.log = log
+        return this.offer(action)
+    }
+
+    /**
+     * 获取一个已填写时间、类型与线程信息的写入事件，日志内容由调用者继续填写后通过[offer]投递
+     *
+     * @param type 日志类型
+     */
+    fun obtainWrite(type: Int): LogAction {
+        val action = this.obtain(Action.WRITE)
+        action.writeAction.flag = type
+        return action
+    }
+
+    /**
+     * 投递一个强制写入事件
+     *
+     * @return `true`表示投递成功
+     */
+    fun flush(): Boolean = this.offer(this.obtain(Action.FLUSH))
+
+    /**
+     * 投递一个日志事件
+     *
+     * @param action 日志事件
+     * @return `true`表示投递成功，若引擎已停止则返回`false`；与停止同时发生时，只有确定会被写入线程消费才返回`true`
+     */
+    fun offer(action: LogAction): Boolean {
+        if (isQuit.get()) {
+            this.recycle(action)
+            return false
+        }
+        val accepted = when {
+            action.action == Action.FLUSH -> if (isFlushPending.compareAndSet(false, true)) {
+                controlLane.offer(action).also { if (!it) isFlushPending.set(false) }
+            } else {
+                // 已有尚未处理的强制写入，处理时会包含本次请求之前投递的全部日志
+                this.recycle(action)
+                return !isTerminated
+            }
+            action.action != Action.WRITE -> controlLane.offer(action)
+            this.isPriority(action.writeAction) -> this.offer(priorityLane, action, true)
+            else -> stripes[action.stripe].let { this.offer(it.logCacheQueue, action, it.logCacheQueue.size() < it.highWater) }
+        }
+        if (accepted) this.signal() else {
+            rejected.incrementAndGet()
+            this.recycle(action)
+        }
+        // 投递期间引擎被停止，写入线程可能已经退出
+        if (accepted && isQuit.get()) return this.reclaim(action)
+        return accepted
+    }
+
+    // 写入线程退出后收回仍留在队列中的事件，返回指定的事件是否已被消费
+    private fun reclaim(action: LogAction): Boolean = consumeLock.withLock {
+        // 写入线程退出前会消费全部已进入队列的事件
+        if (!isTerminated) return true
+        var isConsumed = true
+        while (true) {
+            val a = this.next() ?: break
+            // 停止后取得的事件记录在投递前就会被回收，不会与已消费的事件混淆
+            if (a === action) isConsumed = false
+            rejected.incrementAndGet()
+            this.recycle(a)
+        }
+        isConsumed
+    }
+
+    private fun isPriority(w: WriteAction): Boolean =
+        w.hasThrowable() || (priorityTypes.isNotEmpty() && priorityTypes.binarySearch(w.flag) >= 0)
+
+    // 按策略投递到指定的通道，isAdmitted表示按优先级丢弃时是否仍接收该日志
+    private fun offer(queue: LogRingBuffer, action: LogAction, isAdmitted: Boolean): Boolean = when (config.mOverflowPolicy) {
+        OverflowPolicy.BLOCK -> this.blockOffer(queue, action)
+        OverflowPolicy.DROP_NEWEST -> queue.offer(action)
+        OverflowPolicy.DROP_OLDEST -> this.evictOffer(queue, action)
+        OverflowPolicy.DROP_BY_PRIORITY -> if (priorityTypes.binarySearch(action.writeAction.flag) >= 0) this.evictOffer(queue, action)
+        else isAdmitted && queue.offer(action)
+    }
+
+    // 队列已满时丢弃最早的事件，直到投递成功
+    private fun evictOffer(queue: LogRingBuffer, action: LogAction): Boolean {
+        while (!queue.offer(action)) {
+            queue.poll()?.let {
+                evicted.incrementAndGet()
+                this.recycle(it)
+            }
+        }
+        return true
+    }
+
+    // 队列已满时等待写入线程腾出空间，超时则放弃
+    private fun blockOffer(queue: LogRingBuffer, action: LogAction): Boolean {
+        if (queue.offer(action)) return true
+        this.signal()
+        val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.mBlockTimeout)
+        while (System.nanoTime() < deadline) {
+            LockSupport.parkNanos(BLOCK_PARK_NANOS)
+            if (queue.offer(action)) return true
+        }
+        return false
+    }
+
+    /** 因队列已满而被丢弃的日志总数 */
+    fun droppedCount(): Long = rejected.get() + evicted.get()
+
+    /** 因队列已满而被拒绝的新日志数量 */
+    fun rejectedCount(): Long = rejected.get()
+
+    /** 为腾出空间而被丢弃的早期日志数量 */
+    fun evictedCount(): Long = evicted.get()
+
+    private fun signal() {
+        // 只有在写入线程挂起时才需要唤醒，避免每次投递都产生无意义的系统调用
+        if (isParked.get() && isParked.compareAndSet(true, false)) LockSupport.unpark(writer)
+    }
+
+    private val batch = ArrayList<LogAction>(batchCount)
+
+    // 取出并消费事件时持有，写入线程与崩溃时的排空互斥
+    private val consumeLock = ReentrantLock()
+
+    // 排空时使用的批次，预先分配以免崩溃时再分配内存
+    private val drainBatch = ArrayList<LogAction>(batchCount)
+
+    // 多分段时，各分段已取出但尚未进入批次的队首事件，只会在写入线程中使用
+    private val heads = arrayOfNulls<LogAction>(stripes.size)
+
+    // 连续取出的优先日志数量
+    private var priorityStreak = 0
+
+    // 取出下一个要消费的事件：控制类事件最先，之后按权重交替取优先日志与普通日志
+    private fun next(): LogAction? {
+        controlLane.poll()?.let {
+            // 取出后的强制写入请求需要重新投递，不能再与已取出的合并
+            if (it.action == Action.FLUSH) isFlushPending.set(false)
+            return it
+        }
+        if (priorityStreak < priorityWeight) priorityLane.poll()?.let {
+            priorityStreak++
+            return it
+        }
+        priorityStreak = 0
+        return this.nextNormal() ?: priorityLane.poll()
+    }
+
+    // 取出下一条普通日志：单分段时直接取队首，多分段时取各分段队首中时间最早的一个
+    private fun nextNormal(): LogAction? {
+        if (stripes.size == 1) return stripes[0].logCacheQueue.poll()
+        var min = -1
+        for (i in stripes.indices) {
+            val head = heads[i] ?: stripes[i].logCacheQueue.poll()?.also { heads[i] = it } ?: continue
+            if (min < 0 || head.writeAction.localTime < heads[min]!!.writeAction.localTime) min = i
+        }
+        if (min < 0) return null
+        return heads[min].also { heads[min] = null }
+    }
+
+    private fun isEmpty(): Boolean {
+        if (!controlLane.isEmpty() || !priorityLane.isEmpty()) return false
+        for (i in stripes.indices) if (null != heads[i] || !stripes[i].logCacheQueue.isEmpty()) return false
+        return true
+    }
+
+    // 取出一个批次的事件并消费，返回是否有事件被消费。必须持有consumeLock
+    private fun consumeBatch(batch: ArrayList<LogAction>): Boolean {
+        var bytes = 0
+        while (batch.size < batchCount && bytes < batchBytes) {
+            val action = this.next() ?: break
+            batch.add(action)
+            if (action.action == Action.WRITE) bytes += action.writeAction.length()
+        }
+        if (batch.isEmpty()) return false
+        try {
+            consumer(batch)
+        } catch (e: Exception) {
+            Log.e(TAG, "工作线程出现异常", e)
+        }
+        for (i in batch.indices) this.recycle(batch[i])
+        batch.clear()
+        return true
+    }
+
+    private fun execute() {
+        while (true) {
+            if (consumeLock.withLock { this.consumeBatch(batch) }) continue
+            if (isQuit.get()) break
+            val wait = consumeLock.withLock { this.idle(false) }
+            if (wait == 0L) continue
+            isParked.set(true)
+            // 设置挂起标识后必须再次检查队列，防止与生产者之间的唤醒丢失
+            if (this.isEmpty() && !isQuit.get()) {
+                if (wait < 0) LockSupport.park(this) else LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(wait))
+            }
+            isParked.set(false)
+        }
+        consumeLock.withLock {
+            // 停止前已通过检查的生产者可能仍在投递，退出前再消费一次
+            while (this.consumeBatch(batch)) continue
+            if (isQuitFlush) {
+                batch.add(this.obtain(Action.FLUSH))
+                this.consumeBatch(batch)
+            }
+            this.idle(true)
+            isTerminated = true
+        }
+        Log.d(TAG, "写入线程已退出")
+    }
+
+    /**
+     * 在当前线程中立即消费队列中剩余的事件，用于应用崩溃等写入线程来不及处理的场景。
+     * --
+     * 写入线程正在消费的批次会先完成；队列排空后以`isQuit=true`调用一次[onIdle]。
+     *
+     * @param timeout 最长的耗时
+     * @param unit 时间单位
+     * @return `true`表示已在限定时间内排空
+     */
+    fun drain(timeout: Long, unit: TimeUnit): Boolean {
+        val deadline = System.nanoTime() + unit.toNanos(timeout)
+        try {
+            if (!consumeLock.tryLock(timeout, unit)) return false
+        } catch (e: InterruptedException) {
+            return false
+        }
+        try {
+            while (System.nanoTime() < deadline) {
+                if (this.consumeBatch(drainBatch)) continue
+                this.idle(true)
+                return true
+            }
+            return false
+        } finally {
+            consumeLock.unlock()
+        }
+    }
+
+    private fun idle(isQuit: Boolean): Long = try {
+        onIdle(isQuit)
+    } catch (e: Exception) {
+        Log.e(TAG, "工作线程出现异常", e)
+        -1L
+    }
+
+    /**
+     * 停止引擎，不再接收新的日志事件。
+     * --
+     * 写入线程会将队列中已有的事件全部消费完成后再退出。
+     *
+     * @param isFlush 是否在队列消费完成后追加一次强制写入
+     */
+    fun quit(isFlush: Boolean) {
+        // 追加的强制写入由写入线程在队列排空后执行，不经过控制通道，以免先于已投递的日志。
+        // 先记录该要求再设置停止标识，写入线程看到停止标识时一定也能看到该要求
+        if (isFlush) isQuitFlush = true
+        if (!isQuit.compareAndSet(false, true)) return
+        LockSupport.unpark(writer)
+    }
+
+    /**
+     * 等待写入线程退出
+     *
+     * @param timeout 最长等待时间
+     * @param unit 时间单位
+     * @return `true`表示写入线程已退出
+     */
+    fun awaitTermination(timeout: Long, unit: TimeUnit): Boolean {
+        val w = writer ?: return true
+        w.join(unit.toMillis(timeout))
+        return !w.isAlive
+    }
+}
@@ -0,0 +1,57 @@
+package com.jinkeen.lifeplus.log.nativ
+
+/**
+ * 日志内容的格式化工具，只会在写入线程中被使用
+ * --
+ * 格式中的每个`{}`按顺序替换为一个参数，`\{}`表示原样输出`{}`；多余的参数将被忽略，缺少的参数保留`{}`。
+ */
+internal object LogFormatter {
+
+    private const val DELIM_START = '{'
+    private const val DELIM_STOP = '}'
+    private const val ESCAPE = '\\'
+
+    /**
+     * 将延迟格式化的日志按格式输出到[builder]中
+     *
+     * @param builder 输出目标
+     * @param pattern 日志格式
+     * @param w 保存参数的日志记录
+     */
+    fun format(builder: StringBuilder, pattern: String, w: WriteAction) {
+        var argIndex = 0
+        var i = 0
+        val length = pattern.length
+        while (i < length) {
+            val c = pattern[i]
+            if (c == DELIM_START && i + 1 < length && pattern[i + 1] == DELIM_STOP && argIndex < w.argCount()) {
+                this.appendArg(builder, w, argIndex++)
+                i += 2
+                continue
+            }
+            if (c == ESCAPE && i + 2 < length && pattern[i + 1] == DELIM_START && pattern[i + 2] == DELIM_STOP) {
+                builder.append(DELIM_START).append(DELIM_STOP)
+                i += 3
+                continue
+            }
+            builder.append(c)
+            i++
+        }
+    }
+
+    private fun appendArg(builder: StringBuilder, w: WriteAction, index: Int) {
+        if (w.isLongArg(index)) {
+            builder.append(w.longArg(index))
+            return
+        }
+        when (val arg = w.refArg(index)) {
+            null -> builder.append("null")
+            is String -> builder.append(arg)
+            is Array<*> -> builder.append(arg.contentDeepToString())
+            is IntArray -> builder.append(arg.contentToString())
+            is LongArray -> builder.append(arg.contentToString())
+            is ByteArray -> builder.append(arg.contentToString())
+            else -> builder.append(arg.toString())
+        }
+    }
+}
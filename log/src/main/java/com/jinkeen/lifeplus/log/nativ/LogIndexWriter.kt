@@ -0,0 +1,125 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import android.util.Log
+import com.jinkeen.lifeplus.log.parser.LogIndex
+import java.io.File
+
+/**
+ * 写入日志文件的稀疏索引
+ * --
+ * 只在写入线程中使用。每次写入后以最新日志所在暂存区的序号标记新增的日志（[mark]），封装完成的位置更新后（[checkpoint]），
+ * 以该位置的文件大小为结束位置追加一条索引，覆盖序号不大于该位置的暂存区中的全部日志，不等待封装。
+ *
+ * 一次写入的日志可能跨越多个暂存区，无法确定其中每条日志所在的暂存区，因此与封装位置相邻的一组日志同时计入前后两条索引，
+ * 查询时只会多读取，不会遗漏。底层库没有暂存区，全部日志以同一序号标记，强制写入后整体记录。
+ *
+ * @see LogIndex
+ */
+internal class LogIndexWriter {
+
+    companion object {
+
+        private const val TAG = "LogIndexWriter"
+    }
+
+    // 以序号标记的一组日志：时间范围、条数与类型位图
+    private class Span {
+        var seq = 0L
+        var minTime = Long.MAX_VALUE
+        var maxTime = Long.MIN_VALUE
+        var count = 0
+        var types = 0L
+
+        fun add(w: WriteAction) {
+            if (w.localTime < minTime) minTime = w.localTime
+            if (w.localTime > maxTime) maxTime = w.localTime
+            count++
+            types = types or LogIndex.typeBit(w.flag)
+        }
+
+        fun addAll(other: Span) {
+            if (other.minTime < minTime) minTime = other.minTime
+            if (other.maxTime > maxTime) maxTime = other.maxTime
+            count += other.count
+            types = types or other.types
+        }
+
+        fun reset() {
+            minTime = Long.MAX_VALUE
+            maxTime = Long.MIN_VALUE
+            count = 0
+            types = 0L
+        }
+    }
+
+    private var sidecar: File? = null
+    private var fileName: String? = null
+
+    // 下一条索引的起始位置
+    private var start = 0L
+
+    // 尚未标记的日志，以及已标记、尚未记录的日志（序号递增）
+    private val unmarked = Span()
+    private val spans = ArrayDeque<Span>()
+    private val entry = Span()
+    private var lastMark: SealMark? = null
+
+    /**
+     * 切换到新的日志文件，之前文件中尚未记录的日志不再记录，解析时总是读取索引未覆盖的结尾
+     *
+     * @param logFile 日志文件，已有的内容不会被索引覆盖
+     */
+    fun activate(logFile: File) {
+        sidecar = LogIndex.sidecar(logFile)
+        fileName = logFile.name
+        start = logFile.length()
+        unmarked.reset()
+        spans.clear()
+    }
+
+    fun add(w: WriteAction) {
+        unmarked.add(w)
+    }
+
+    /**
+     * 标记自上次以来写入的日志
+     *
+     * @param seq 最新一条日志所在暂存区的序号，这些日志都在序号不大于它、且不小于上次标记的暂存区中
+     */
+    fun mark(seq: Long) {
+        if (unmarked.count == 0) return
+        val last = spans.lastOrNull()
+        val span = if (null != last && last.seq == seq) last else Span().also {
+            it.seq = seq
+            spans.addLast(it)
+        }
+        span.addAll(unmarked)
+        unmarked.reset()
+    }
+
+    /**
+     * 按封装完成的位置记录一条索引
+     *
+     * @param mark 封装完成的位置，已记录过或属于其他文件时忽略
+     */
+    fun checkpoint(mark: SealMark) {
+        if (mark === lastMark) return
+        lastMark = mark
+        val file = sidecar ?: return
+        if (mark.fileName != fileName || mark.length <= start) return
+        // 序号不大于该位置的日志，以及可能有部分日志在该位置之前的下一组
+        entry.reset()
+        for (span in spans) {
+            entry.addAll(span)
+            if (span.seq > mark.seq) break
+        }
+        if (entry.count == 0) return
+        try {
+            LogIndex.append(file, start, mark.length, entry.minTime, entry.maxTime, entry.count, entry.types)
+        } catch (e: Exception) {
+            Log.e(TAG, "写入日志索引出现异常", e)
+        }
+        start = mark.length
+        while (spans.isNotEmpty() && spans.first().seq <= mark.seq) spans.removeFirst()
+    }
+}
@@ -3,6 +3,7 @@ package com.jinkeen.lifeplus.log.nativ
 import android.util.Log
 import com.dianping.logan.*
 import com.jinkeen.lifeplus.log.listener.OnLogProtocolStatusListener
+import java.io.File
 import java.util.*
 import kotlin.collections.HashSet
 
@@ -15,10 +16,19 @@ class LogProtocol {
         operator fun invoke(): LogProtocol = instance
 
         private const val TAG = "LogProtocol"
+
+        /** 关闭时等待封装完成的最长毫秒数 */
+        private const val CLOSE_TIMEOUT = 3000L
     }
 
     private var isInitialized = false
-    private var loganProtocol: CLoganProtocol? = null
+    private var isDebug = false
+    private var loganProtocol: LoganProtocolHandler? = null
+
+    // 日志文件夹与当前写入的文件，以及底层库最近一次强制写入后的位置
+    private var logDir: File? = null
+    private var fileName: String? = null
+    private var flushMark: SealMark? = null
 
     /**
      * 是否已初始化
@@ -37,25 +47,29 @@ class LogProtocol {
      * @param iv16 128位的文件加密iv
      */
     fun init(cachePath: String, logFilePath: String, maxSize: Int, key16: String, iv16: String) {
-        Log.d(TAG, "准备初始化，isInitialized=$isInitialized")
+        if (isDebug) Log.d(TAG, "准备初始化，isInitialized=$isInitialized")
         if (isInitialized) return
-        if (CLoganProtocol.isCloganSuccess()) {
-            loganProtocol = CLoganProtocol.newInstance()
-            isInitialized = try {
-                Log.d(TAG, "执行clogan_init()函数")
-                Log.d(TAG, "参数：cachePath=${cachePath}, logFilePath=${logFilePath}, maxSize=${maxSize}, key=${key16}, iv=${iv16}")
-                val code = loganProtocol!!.clogan_init(cachePath, logFilePath, maxSize, key16, iv16)
-                this.setLoganStatus(CLGOAN_INIT_STATUS, code)
-                code == CLOGAN_INIT_SUCCESS_MMAP || code == CLOGAN_INIT_SUCCESS_MEMORY
-            } catch (e: UnsatisfiedLinkError) {
-                Log.e(TAG, "clogan_init()函数执行出现异常", e)
-                this.setLoganStatus(CLGOAN_INIT_STATUS, CLOGAN_INIT_FAIL_JNI)
-                false
-            }
-        } else {
-            isInitialized = false
+        loganProtocol = if (CLoganProtocol.isCloganSuccess()) CLoganProtocol.newInstance() else {
+            // 底层库不可用时使用纯Java的实现，写入的文件格式相同
+            Log.w(TAG, "C库不可用，使用JVM实现写入日志")
             this.setLoganStatus(CLOGAN_LOAD_SO, CLOGAN_LOAD_SO_FAIL)
+            JvmLoganProtocol()
         }
+        isInitialized = try {
+            if (isDebug) Log.d(TAG, "执行clogan_init()函数")
+            // 加密的key与iv不输出到控制台
+            if (isDebug) Log.d(TAG, "参数：cachePath=${cachePath}, logFilePath=${logFilePath}, maxSize=${maxSize}")
+            val code = loganProtocol!!.clogan_init(cachePath, logFilePath, maxSize, key16, iv16)
+            this.setLoganStatus(CLGOAN_INIT_STATUS, code)
+            logDir = File(logFilePath)
+            code == CLOGAN_INIT_SUCCESS_MMAP || code == CLOGAN_INIT_SUCCESS_MEMORY
+        } catch (e: UnsatisfiedLinkError) {
+            Log.e(TAG, "clogan_init()函数执行出现异常", e)
+            this.setLoganStatus(CLGOAN_INIT_STATUS, CLOGAN_INIT_FAIL_JNI)
+            false
+        }
+        // 初始化之前设置的调试模式
+        if (isInitialized) this.debug(isDebug)
     }
 
     /**
@@ -67,8 +81,9 @@ class LogProtocol {
         if (!isInitialized) return
         loganProtocol?.let { protocol ->
             try {
-                Log.d(TAG, "执行clogan_open(${fileName})函数")
+                if (isDebug) Log.d(TAG, "执行clogan_open(${fileName})函数")
                 val code = protocol.clogan_open(fileName)
+                this.fileName = fileName
                 this.setLoganStatus(CLOGAN_OPEN_STATUS, code)
             } catch (e: UnsatisfiedLinkError) {
                 Log.e(TAG, "clogan_open(${fileName})函数执行异常")
@@ -91,8 +106,8 @@ class LogProtocol {
         if (!isInitialized) return
         loganProtocol?.let { protocol ->
             try {
-                Log.d(TAG, "执行clogan_write()函数")
-                Log.d(TAG, "参数：type=${type}, log=${log}, localTime=${localTime}, threadName=${threadName}, threadId=${threadId}, isMainThread=${isMainThread}")
+                if (isDebug) Log.d(TAG, "执行clogan_write()函数")
+                if (isDebug) Log.d(TAG, "参数：type=${type}, log=${log}, localTime=${localTime}, threadName=${threadName}, threadId=${threadId}, isMainThread=${isMainThread}")
                 val code = protocol.clogan_write(type, log, localTime, threadName, threadId, if (isMainThread) 1 else 0)
                 this.setLoganStatus(CLOGAN_WRITE_STATUS, code)
             } catch (e: UnsatisfiedLinkError) {
@@ -102,6 +117,45 @@ class LogProtocol {
         } ?: this.setLoganStatus(CLOGAN_WRITE_STATUS, CLOGAN_OPEN_FAIL_NOINIT)
     }
 
+    /**
+     * 批量写入数据，整个批次只进行一次状态回报。
+     * --
+     * 若批次中出现写入失败，只回报第一个失败的结果码；`JNI`调用异常将立即中止剩余的写入。
+     * 当前文件已达到最大大小（[CLOAGN_WRITE_FAIL_MAXFILE]）时立即停止，由调用者切换文件后从返回的位置继续写入。
+     *
+     * @param batch 要写入的日志批次
+     * @param from 批次中开始写入的位置（包含）
+     * @param to 批次中结束写入的位置（不包含）
+     * @return 因文件已满而未写入的第一条日志的位置，全部处理完成时返回[to]
+     */
+    fun writeBatch(batch: List<WriteAction>, from: Int = 0, to: Int = batch.size): Int {
+        if (!isInitialized || from >= to) return to
+        loganProtocol?.let { protocol ->
+            if (isDebug) Log.d(TAG, "批量执行clogan_write()函数，共${to - from}条")
+            var code = CLOGAN_WRITE_SUCCESS
+            var next = to
+            try {
+                for (i in from until to) {
+                    val w = batch[i]
+                    val c = protocol.clogan_write(w.flag, w.log, w.localTime, w.threadName, w.threadId, if (w.isMainThread) 1 else 0)
+                    code = this.mergeCode(code, c)
+                    if (c == CLOAGN_WRITE_FAIL_MAXFILE) {
+                        next = i
+                        break
+                    }
+                }
+            } catch (e: UnsatisfiedLinkError) {
+                Log.e(TAG, "clogan_write()函数执行异常", e)
+                code = CLOGAN_WRITE_FAIL_JNI
+            }
+            this.setLoganStatus(CLOGAN_WRITE_STATUS, code)
+            return next
+        } ?: this.setLoganStatus(CLOGAN_WRITE_STATUS, CLOGAN_OPEN_FAIL_NOINIT)
+        return to
+    }
+
+    private fun mergeCode(code: Int, c: Int): Int = if (c != CLOGAN_WRITE_SUCCESS && code == CLOGAN_WRITE_SUCCESS) c else code
+
     /**
      * 强制写入文件。建议在崩溃或者退出程序的时候调用
      */
@@ -109,23 +163,56 @@ class LogProtocol {
         if (!isInitialized) return
         loganProtocol?.let { protocol ->
             try {
-                Log.d(TAG, "执行clogan_flush()函数")
+                if (isDebug) Log.d(TAG, "执行clogan_flush()函数")
                 protocol.clogan_flush()
+                val name = fileName
+                if (protocol !is JvmLoganProtocol && null != name) flushMark = SealMark(name, 0L, File(logDir, name).length())
             } catch (e: UnsatisfiedLinkError) {
                 Log.e(TAG, "clogan_flush()函数执行异常", e)
             }
         }
     }
 
+    /**
+     * 结束写入，之后可以按新的配置重新初始化
+     * --
+     * 纯Java的实现将暂存的日志全部写入文件后停止封装线程并被丢弃；底层库在进程中只能初始化一次，保持已初始化的状态，
+     * 其缓存在映射文件中，不需要额外处理。只应在写入线程退出后调用。
+     */
+    fun close() {
+        val protocol = loganProtocol
+        if (!isInitialized || protocol !is JvmLoganProtocol) return
+        if (!protocol.close(CLOSE_TIMEOUT)) Log.w(TAG, "关闭前未能封装全部暂存的日志")
+        loganProtocol = null
+        isInitialized = false
+    }
+
+    /**
+     * 最新一条日志所在暂存区的序号，只在写入线程中使用
+     * --
+     * 底层库没有暂存区，总是返回0。
+     */
+    internal fun writtenSeq(): Long = (loganProtocol as? JvmLoganProtocol)?.writtenSeq() ?: 0L
+
+    /**
+     * 获取最近封装完成的位置，不等待封装
+     * --
+     * 纯Java的实现在封装线程中写入文件，每封装一个暂存区更新一次；底层库在强制写入后更新，序号总是0。
+     *
+     * @return 尚未封装任何日志时返回`null`
+     */
+    internal fun sealMark(): SealMark? = loganProtocol.let { if (it is JvmLoganProtocol) it.sealMark else flushMark }
+
     /**
      * 是否为debug环境。debug环境将输出过程日志到控制台中
      *
      * @param isDebug 是否为debug环境
      */
     fun debug(isDebug: Boolean) {
+        this.isDebug = isDebug
         if (!isInitialized) return
         try {
-            Log.d(TAG, "执行clogan_debug()函数")
+            if (isDebug) Log.d(TAG, "执行clogan_debug()函数")
             loganProtocol?.clogan_debug(isDebug)
         } catch (e: UnsatisfiedLinkError) {
             Log.e(TAG, "clogan_debug()函数执行异常", e)
@@ -141,10 +228,19 @@ class LogProtocol {
     private val writeCodes = Collections.synchronizedSet(HashSet<Int>())
 
     private fun setLoganStatus(cmd: String, code: Int) {
-        Log.d(TAG, "设置日志状态，CMD=${cmd}, CODE=${code}")
+        if (isDebug) Log.d(TAG, "设置日志状态，CMD=${cmd}, CODE=${code}")
         if (code >= 0) return
         if (CLOGAN_WRITE_STATUS.endsWith(cmd) && code != CLOGAN_WRITE_FAIL_JNI)
             if (writeCodes.contains(code)) return else writeCodes.add(code)
         listener?.onProtocolStatus(cmd, code)
     }
-}
\ No newline at end of file
+}
+
+/**
+ * 日志文件中封装完成的位置
+ *
+ * @property fileName 日志文件名
+ * @property seq 最后封装的暂存区序号，文件在该位置之前包含序号不大于它的暂存区中的全部日志
+ * @property length 日志文件的大小，在数据块的边界上
+ */
+internal class SealMark(val fileName: String, val seq: Long, val length: Long)
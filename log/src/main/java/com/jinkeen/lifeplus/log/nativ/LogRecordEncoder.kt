@@ -0,0 +1,159 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * 日志记录的二进制编码器
+ * --
+ * 将一批日志记录按`UTF-8`编码写入一块复用的直接内存（`Direct ByteBuffer`）中，供底层通过地址与长度直接读取，
+ * 避免`JNI`在每次调用时将`Java String`转换为`Modified UTF-8`。线程名称按字典编码为较小的ID，只在首次出现时写入名称本身。
+ *
+ * 编码格式（字节序为本机字节序）：
+ * - [TAG_RESET]：清空字典
+ * - [TAG_THREAD_NAME]：`short`字典ID、`short`名称长度、名称的`UTF-8`字节
+ * - [TAG_RECORD]：`int`类型、`long`本地时间、`long`线程ID、`byte`是否主线程、`short`线程名称字典ID、`int`内容长度、内容的`UTF-8`字节
+ *
+ * 这是该格式的纯Java参考实现，底层库按同一格式提供按地址与长度读取的写入入口后，由写入线程编码整个批次后一次提交。
+ * 非线程安全，只应在写入线程中使用。
+ *
+ * @param capacity 缓冲区的初始容量
+ */
+internal class LogRecordEncoder(capacity: Int) {
+
+    companion object {
+
+        const val TAG_RESET: Byte = 0
+        const val TAG_THREAD_NAME: Byte = 1
+        const val TAG_RECORD: Byte = 2
+
+        /** 字典最多保存的线程名称数量，超过后清空重建 */
+        const val MAX_DICTIONARY_SIZE = 1024
+
+        /** 一条记录除内容外的固定长度 */
+        private const val RECORD_HEADER = 1 + 4 + 8 + 8 + 1 + 2 + 4
+
+        /** 一个字符编码后的最大字节数 */
+        private const val MAX_BYTES_PER_CHAR = 3
+    }
+
+    /** 编码结果所在的缓冲区，有效数据范围为`[0, length())`，扩容后会被替换 */
+    var buffer: ByteBuffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder())
+        private set
+
+    private val dictionary = HashMap<String, Int>()
+    private var isDictionaryReset = true
+    private var count = 0
+
+    // UTF-8编码的中间结果，按需扩容后复用
+    private var scratch = ByteArray(256)
+
+    /** 当前批次已编码的记录数 */
+    fun count(): Int = count
+
+    /** 当前批次已编码的字节数 */
+    fun length(): Int = buffer.position()
+
+    /**
+     * 开始一个新的批次
+     */
+    fun reset() {
+        buffer.clear()
+        count = 0
+    }
+
+    /**
+     * 清空线程名称字典，下一个批次会先写入[TAG_RESET]
+     */
+    fun resetDictionary() {
+        dictionary.clear()
+        isDictionaryReset = true
+    }
+
+    /**
+     * 编码一条日志记录
+     *
+     * @param w 日志记录
+     * @return `true`表示编码成功；当前批次剩余空间不足时返回`false`，调用者应提交当前批次后[reset]并重试
+     */
+    fun encode(w: WriteAction): Boolean {
+        val nameId = dictionary[w.threadName]
+        var required = RECORD_HEADER + w.log.length * MAX_BYTES_PER_CHAR
+        if (null == nameId) required += 1 + 2 + 2 + w.threadName.length * MAX_BYTES_PER_CHAR + 1
+        if (isDictionaryReset || (null == nameId && dictionary.size >= MAX_DICTIONARY_SIZE)) required++
+        if (buffer.remaining() < required) {
+            if (count > 0) return false
+            this.grow(required)
+        }
+        if (null == nameId && dictionary.size >= MAX_DICTIONARY_SIZE) this.resetDictionary()
+        if (isDictionaryReset) {
+            buffer.put(TAG_RESET)
+            isDictionaryReset = false
+        }
+        val id = nameId ?: this.define(w.threadName)
+        buffer.put(TAG_RECORD)
+        buffer.putInt(w.flag)
+        buffer.putLong(w.localTime)
+        buffer.putLong(w.threadId)
+        buffer.put(if (w.isMainThread) 1 else 0)
+        buffer.putShort(id.toShort())
+        val lengthAt = buffer.position()
+        buffer.putInt(0)
+        buffer.putInt(lengthAt, this.putUtf8(w.log))
+        count++
+        return true
+    }
+
+    private fun define(name: String): Int {
+        val id = dictionary.size
+        dictionary[name] = id
+        buffer.put(TAG_THREAD_NAME)
+        buffer.putShort(id.toShort())
+        val lengthAt = buffer.position()
+        buffer.putShort(0)
+        buffer.putShort(lengthAt, this.putUtf8(name).toShort())
+        return id
+    }
+
+    private fun grow(required: Int) {
+        val capacity = maxOf(buffer.capacity() * 2, buffer.position() + required)
+        val old = buffer
+        old.flip()
+        buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder())
+        buffer.put(old)
+    }
+
+    // 先在堆内存中按UTF-8编码，再一次性复制到缓冲区，返回写入的字节数
+    private fun putUtf8(s: String): Int {
+        val length = s.length
+        if (scratch.size < length * MAX_BYTES_PER_CHAR) scratch = ByteArray(length * MAX_BYTES_PER_CHAR)
+        val out = scratch
+        var n = 0
+        var i = 0
+        while (i < length) {
+            val c = s[i++]
+            when {
+                c.code < 0x80 -> out[n++] = c.code.toByte()
+                c.code < 0x800 -> {
+                    out[n++] = (0xC0 or (c.code shr 6)).toByte()
+                    out[n++] = (0x80 or (c.code and 0x3F)).toByte()
+                }
+                Character.isHighSurrogate(c) && i < length && Character.isLowSurrogate(s[i]) -> {
+                    val cp = Character.toCodePoint(c, s[i++])
+                    out[n++] = (0xF0 or (cp shr 18)).toByte()
+                    out[n++] = (0x80 or ((cp shr 12) and 0x3F)).toByte()
+                    out[n++] = (0x80 or ((cp shr 6) and 0x3F)).toByte()
+                    out[n++] = (0x80 or (cp and 0x3F)).toByte()
+                }
+                Character.isSurrogate(c) -> out[n++] = '?'.code.toByte()
+                else -> {
+                    out[n++] = (0xE0 or (c.code shr 12)).toByte()
+                    out[n++] = (0x80 or ((c.code shr 6) and 0x3F)).toByte()
+                    out[n++] = (0x80 or (c.code and 0x3F)).toByte()
+                }
+            }
+        }
+        buffer.put(out, 0, n)
+        return n
+    }
+}
@@ -0,0 +1,80 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * 有界的环形日志队列
+ * --
+ * 槽位在创建时一次性分配，容量固定，无论生产者如何突发写入，队列本身的内存占用都保持不变。
+ * 每个槽位带有一个序号，生产者与消费者只通过`CAS`竞争位置，不使用任何锁。
+ *
+ * 支持多个生产者并发投递；除写入线程外，生产者在队列已满时也可以取出最早的事件将其丢弃，因此出队同样是并发安全的。
+ *
+ * @param capacity 期望的容量，实际容量为不小于该值的2的幂
+ */
+internal class LogRingBuffer(capacity: Int) {
+
+    /** 实际容量 */
+    val capacity: Int = if (capacity <= 2) 2 else Integer.highestOneBit(capacity - 1) shl 1
+
+    private val mask = this.capacity - 1L
+    private val buffer = arrayOfNulls<LogAction>(this.capacity)
+
+    // 槽位序号：等于入队位置时可写入，等于入队位置+1时可读取
+    private val sequences = AtomicLongArray(this.capacity).apply { for (i in 0 until length()) set(i, i.toLong()) }
+
+    private val tail = AtomicLong(0)
+    private val head = AtomicLong(0)
+
+    /**
+     * 投递一个事件
+     *
+     * @param action 日志事件
+     * @return `true`表示投递成功，队列已满时返回`false`
+     */
+    fun offer(action: LogAction): Boolean {
+        var pos = tail.get()
+        while (true) {
+            val index = (pos and mask).toInt()
+            val dif = sequences.get(index) - pos
+            when {
+                dif == 0L -> if (tail.compareAndSet(pos, pos + 1)) {
+                    buffer[index] = action
+                    sequences.set(index, pos + 1)
+                    return true
+                } else pos = tail.get()
+                dif < 0L -> return false
+                else -> pos = tail.get()
+            }
+        }
+    }
+
+    /**
+     * 取出最早的一个事件
+     *
+     * @return 队列为空时返回`null`
+     */
+    fun poll(): LogAction? {
+        var pos = head.get()
+        while (true) {
+            val index = (pos and mask).toInt()
+            val dif = sequences.get(index) - (pos + 1)
+            when {
+                dif == 0L -> if (head.compareAndSet(pos, pos + 1)) {
+                    val action = buffer[index]
+                    buffer[index] = null
+                    sequences.set(index, pos + capacity)
+                    return action
+                } else pos = head.get()
+                dif < 0L -> return null
+                else -> pos = head.get()
+            }
+        }
+    }
+
+    /** 当前队列中的事件数量（并发下为近似值） */
+    fun size(): Int = (tail.get() - head.get()).coerceIn(0L, capacity.toLong()).toInt()
+
+    fun isEmpty(): Boolean = tail.get() == head.get()
+}
@@ -0,0 +1,54 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import java.io.File
+
+/**
+ * 日志文件分段
+ * --
+ * 每天的日志按大小拆分为多个分段文件：第一个分段的名称为当天0点的13位时间戳（与旧版本的日志文件相同），
+ * 之后的分段名称为`<时间戳>-<序号>`，序号从1开始递增。
+ *
+ * @property file 分段文件
+ * @property day 分段所属日期0点的时间戳
+ * @property seq 分段在当天的序号
+ */
+internal class LogSegment(val file: File, val day: Long, val seq: Int) {
+
+    companion object {
+
+        private val PATTERN = Regex("(\\d{13})(?:-(\\d{1,9}))?")
+
+        // 先按日期再按序号排列
+        private val ORDER = compareBy<LogSegment>({ it.day }, { it.seq })
+
+        /**
+         * 获取分段文件的名称
+         *
+         * @param day 日期0点的时间戳
+         * @param seq 序号
+         */
+        fun name(day: Long, seq: Int): String = if (seq == 0) day.toString() else "$day-$seq"
+
+        /**
+         * 解析分段文件
+         *
+         * @param file 文件
+         * @return 若文件名称不符合分段格式则返回`null`
+         */
+        fun parse(file: File): LogSegment? = PATTERN.matchEntire(file.name)?.let {
+            LogSegment(file, it.groupValues[1].toLong(), it.groupValues[2].toIntOrNull() ?: 0)
+        }
+
+        /**
+         * 列出目录中的所有分段，按日期与序号从早到晚排列
+         *
+         * @param dir 日志目录
+         */
+        fun list(dir: File): List<LogSegment> {
+            val segments = arrayListOf<LogSegment>()
+            dir.listFiles()?.forEach { f -> if (f.isFile) parse(f)?.let { segments.add(it) } }
+            segments.sortWith(ORDER)
+            return segments
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import com.jinkeen.lifeplus.log.LogSupplier
+
+/**
+ * 日志的写入入口
+ * --
+ * 由[LogControlCenter]实现，初始化之前由[LogCaptureBuffer]暂存。延迟格式化的日志在写入线程中生成内容，参见[LogFormatter]。
+ */
+interface LogWriter {
+
+    fun write(log: String, type: Int)
+
+    fun write(log: String, type: Int, tr: Throwable)
+
+    fun write(type: Int, pattern: String, arg: Any?)
+
+    fun write(type: Int, pattern: String, arg: Long)
+
+    fun write(type: Int, pattern: String, arg1: Any?, arg2: Any?)
+
+    fun write(type: Int, pattern: String, arg1: Any?, arg2: Long)
+
+    fun write(type: Int, pattern: String, arg1: Long, arg2: Long)
+
+    fun write(type: Int, pattern: String, args: Array<out Any?>)
+
+    fun write(type: Int, supplier: LogSupplier)
+}
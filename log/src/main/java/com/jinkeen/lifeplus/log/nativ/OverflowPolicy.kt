@@ -0,0 +1,24 @@
+package com.jinkeen.lifeplus.log.nativ
+
+/**
+ * 日志队列已满时的处理策略
+ *
+ * @see LogConfig.mOverflowPolicy
+ */
+enum class OverflowPolicy {
+
+    /** 等待队列腾出空间，超过[LogConfig.mBlockTimeout]仍无空间则丢弃新日志。<i>请勿在`UI`线程密集写日志时使用</i> */
+    BLOCK,
+
+    /** 丢弃新日志 */
+    DROP_NEWEST,
+
+    /** 丢弃队列中最早的日志，为新日志腾出空间 */
+    DROP_OLDEST,
+
+    /**
+     * 按类型优先级丢弃。队列使用量超过3/4后只接收[LogConfig.mPriorityTypes]中的类型，其余类型直接丢弃；
+     * 队列满时优先类型将丢弃最早的日志以腾出空间。
+     */
+    DROP_BY_PRIORITY
+}
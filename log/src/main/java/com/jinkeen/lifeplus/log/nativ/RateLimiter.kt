@@ -0,0 +1,145 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 按日志类型的限流与采样
+ * --
+ * 在创建日志事件之前检查，被拒绝的日志只累加计数，不会进入写入队列。
+ *
+ * - 限流：每种类型一个令牌桶，每秒补充[setRate]指定数量的令牌，最多积累1秒的令牌。实现为`GCRA`算法，
+ * 每种类型只有一个原子变量，通过`CAS`更新，不使用锁。
+ * - 采样：按[setSampleRate]指定的比例随机保留日志。
+ *
+ * 没有配置的类型不受影响。配置可在运行时修改，修改时复制整张配置表，检查时不会创建任何对象。
+ *
+ * @param rateLimits 每种类型每秒最多写入的日志条数
+ * @param sampleRates 每种类型保留日志的比例，取值范围`(0, 1]`
+ */
+internal class RateLimiter(rateLimits: Map<Int, Int> = emptyMap(), sampleRates: Map<Int, Float> = emptyMap()) {
+
+    private class Limit(val type: Int) {
+
+        // 每个令牌的纳秒数，0表示不限流
+        @Volatile
+        var interval = 0L
+
+        // 允许提前消耗的纳秒数，即桶的容量
+        @Volatile
+        var tolerance = 0L
+
+        @Volatile
+        var sampleRate = 1F
+
+        // 理论上下一条日志到达的时间
+        val tat = AtomicLong(Long.MIN_VALUE)
+
+        val suppressed = AtomicLong(0)
+    }
+
+    private class Table(val types: IntArray, val limits: Array<Limit>)
+
+    @Volatile
+    private var table = Table(IntArray(0), emptyArray())
+
+    init {
+        rateLimits.forEach { (type, rate) -> this.setRate(type, rate) }
+        sampleRates.forEach { (type, rate) -> this.setSampleRate(type, rate) }
+    }
+
+    /** 是否配置了任何类型的限流或采样 */
+    fun isEnabled(): Boolean = table.types.isNotEmpty()
+
+    /**
+     * 检查一条日志是否允许写入
+     *
+     * @param type 日志类型
+     * @param now 当前时间（[System.nanoTime]）
+     * @return `true`表示允许写入，否则该日志被计入抑制数量
+     */
+    fun tryAcquire(type: Int, now: Long = System.nanoTime()): Boolean {
+        val table = table
+        if (table.types.isEmpty()) return true
+        val index = table.types.binarySearch(type)
+        if (index < 0) return true
+        val limit = table.limits[index]
+        val sampleRate = limit.sampleRate
+        if (sampleRate < 1F && ThreadLocalRandom.current().nextFloat() >= sampleRate) {
+            limit.suppressed.incrementAndGet()
+            return false
+        }
+        val interval = limit.interval
+        if (interval <= 0) return true
+        while (true) {
+            val tat = limit.tat.get()
+            val base = if (tat == Long.MIN_VALUE || tat - now < 0) now else tat
+            if (base - now > limit.tolerance) {
+                limit.suppressed.incrementAndGet()
+                return false
+            }
+            if (limit.tat.compareAndSet(tat, base + interval)) return true
+        }
+    }
+
+    /**
+     * 设置类型的限流
+     *
+     * @param type 日志类型
+     * @param perSecond 每秒最多写入的日志条数，小于等于0表示不限流
+     */
+    fun setRate(type: Int, perSecond: Int) {
+        val limit = this.obtain(type)
+        if (perSecond <= 0) {
+            limit.interval = 0L
+            return
+        }
+        val interval = maxOf(1L, TimeUnit.SECONDS.toNanos(1) / perSecond)
+        limit.tolerance = interval * (perSecond - 1)
+        limit.interval = interval
+    }
+
+    /**
+     * 设置类型的采样比例
+     *
+     * @param type 日志类型
+     * @param rate 保留日志的比例，大于等于1表示全部保留
+     */
+    fun setSampleRate(type: Int, rate: Float) {
+        this.obtain(type).sampleRate = rate.coerceIn(0F, 1F)
+    }
+
+    /**
+     * 取出自上次调用以来各类型被抑制的日志数量
+     *
+     * @param action 对每个有抑制的类型调用一次
+     */
+    fun drainSuppressed(action: (type: Int, count: Long) -> Unit) {
+        for (limit in table.limits) {
+            if (limit.suppressed.get() == 0L) continue
+            val count = limit.suppressed.getAndSet(0)
+            if (count > 0) action(limit.type, count)
+        }
+    }
+
+    @Synchronized
+    private fun obtain(type: Int): Limit {
+        val current = table
+        val index = current.types.binarySearch(type)
+        if (index >= 0) return current.limits[index]
+        val at = -index - 1
+        val limit = Limit(type)
+        val types = IntArray(current.types.size + 1)
+        val limits = arrayOfNulls<Limit>(current.limits.size + 1)
+        System.arraycopy(current.types, 0, types, 0, at)
+        System.arraycopy(current.limits, 0, limits, 0, at)
+        types[at] = type
+        limits[at] = limit
+        System.arraycopy(current.types, at, types, at + 1, current.types.size - at)
+        System.arraycopy(current.limits, at, limits, at + 1, current.limits.size - at)
+        @Suppress("UNCHECKED_CAST")
+        table = Table(types, limits as Array<Limit>)
+        return limit
+    }
+}
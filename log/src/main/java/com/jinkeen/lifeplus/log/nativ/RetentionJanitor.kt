@@ -0,0 +1,196 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import android.util.Log
+import com.jinkeen.lifeplus.log.parser.LogIndex
+import com.jinkeen.lifeplus.log.util.escapeTimemillis
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.locks.LockSupport
+import kotlin.concurrent.thread
+
+/**
+ * 日志文件清理器
+ * --
+ * 在后台线程中按保留时间与总大小清理日志分段，写入线程只负责通知，不会等待任何文件操作。
+ *
+ * - 保留时间：分段中每种日志类型的保留时间取[LogConfig.mRetentionTiers]中的配置，未配置的类型为[LogConfig.saveDays]，
+ * 分段按其中保留时间最长的类型计算是否过期。分段包含的类型记录在同名的`.types`文件中，没有记录的分段按[LogConfig.saveDays]处理。
+ * - 总大小：设置了[LogConfig.mMaxDirSize]时，日志目录超过该值的[LOW_WATER_PERCENT]%后从最早的分段开始删除，
+ * 优先删除只包含普通类型的分段，正在写入的分段不会被删除。
+ *
+ * @property config 日志配置
+ * @property onEvicted 有文件被删除后的回调，在清理线程中调用
+ */
+internal class RetentionJanitor(private val config: LogConfig, private val onEvicted: () -> Unit = {}) {
+
+    companion object {
+
+        private const val TAG = "RetentionJanitor"
+
+        /** 定期清理的间隔毫秒数 */
+        private const val INTERVAL = 60 * 60 * 1000L
+
+        /** 两次清理之间至少间隔的毫秒数 */
+        private const val MIN_GAP = 1000L
+
+        /** 按总大小清理时，删除到[LogConfig.mMaxDirSize]的该百分比以下 */
+        const val LOW_WATER_PERCENT = 80
+    }
+
+    private val dir = File(config.logDirPath)
+
+    // 等待写入的分段类型记录
+    private val pendingTypes = ConcurrentHashMap<String, IntArray>()
+
+    // 正在写入的分段名称
+    @Volatile
+    private var active: String? = null
+
+    private val isRunning = AtomicBoolean(false)
+
+    @Volatile
+    private var janitor: Thread? = null
+
+    /**
+     * 启动清理线程，首次清理会立即进行。重复调用无效
+     */
+    fun start() {
+        if (!isRunning.compareAndSet(false, true)) return
+        janitor = thread(start = true, isDaemon = true, name = "log_retention_janitor") {
+            while (isRunning.get()) {
+                val begin = System.currentTimeMillis()
+                try {
+                    this.run(begin)
+                } catch (e: Exception) {
+                    Log.e(TAG, "清理日志文件出现异常", e)
+                }
+                if (!isRunning.get()) break
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(INTERVAL))
+                // 频繁通知时限制清理的频率
+                val elapsed = System.currentTimeMillis() - begin
+                if (elapsed < MIN_GAP) try {
+                    Thread.sleep(MIN_GAP - elapsed)
+                } catch (e: InterruptedException) {
+                    break
+                }
+            }
+        }
+    }
+
+    /**
+     * 停止清理线程
+     */
+    fun stop() {
+        if (!isRunning.compareAndSet(true, false)) return
+        LockSupport.unpark(janitor)
+        janitor = null
+    }
+
+    /**
+     * 通知清理线程尽快进行一次清理
+     */
+    fun trigger() {
+        LockSupport.unpark(janitor)
+    }
+
+    /**
+     * 设置正在写入的分段，该分段不会被删除
+     *
+     * @param name 分段名称
+     */
+    fun activate(name: String) {
+        active = name
+    }
+
+    /**
+     * 记录分段包含的日志类型，由清理线程写入文件
+     *
+     * @param name 分段名称
+     * @param types 分段中已写入的全部类型
+     */
+    fun markTypes(name: String, types: IntArray) {
+        pendingTypes[name] = types
+        this.trigger()
+    }
+
+    /**
+     * 立即进行一次清理
+     *
+     * @param now 当前时间
+     * @return 被删除的分段数量
+     */
+    internal fun run(now: Long): Int {
+        this.savePendingTypes()
+        val segments = LogSegment.list(dir)
+        val today = escapeTimemillis(now)
+        var evicted = 0
+        val kept = ArrayList<LogSegment>(segments.size)
+        val retentions = HashMap<LogSegment, Long>()
+        for (segment in segments) {
+            val retention = this.retention(segment)
+            if (segment.day <= today - retention && segment.file.name != active) {
+                if (this.delete(segment)) evicted++
+            } else {
+                kept.add(segment)
+                retentions[segment] = retention
+            }
+        }
+        if (config.mMaxDirSize > 0) {
+            val target = config.mMaxDirSize / 100 * LOW_WATER_PERCENT
+            var total = 0L
+            dir.listFiles()?.forEach { if (it.isFile) total += it.length() }
+            // 先删除只包含普通类型的分段，仍然超过时再删除其他分段
+            for (isTiered in booleanArrayOf(false, true)) {
+                val iterator = kept.iterator()
+                while (total > target && iterator.hasNext()) {
+                    val segment = iterator.next()
+                    if (segment.file.name == active || (retentions[segment]!! > config.saveDays) != isTiered) continue
+                    val bytes = segment.file.length() + this.typesFile(segment).length() + LogIndex.sidecar(segment.file).length()
+                    if (this.delete(segment)) {
+                        total -= bytes
+                        evicted++
+                        iterator.remove()
+                    }
+                }
+            }
+        }
+        if (evicted > 0) {
+            Log.d(TAG, "已清理${evicted}个日志文件")
+            onEvicted()
+        }
+        return evicted
+    }
+
+    private fun savePendingTypes() {
+        val iterator = pendingTypes.entries.iterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            try {
+                File(dir, "${entry.key}.types").writeText(entry.value.joinToString(","))
+                iterator.remove()
+            } catch (e: Exception) {
+                Log.e(TAG, "记录日志类型出现异常", e)
+            }
+        }
+    }
+
+    private fun typesFile(segment: LogSegment): File = File(dir, "${segment.file.name}.types")
+
+    // 分段的保留时间，取其中保留时间最长的类型
+    private fun retention(segment: LogSegment): Long {
+        if (config.mRetentionTiers.isEmpty()) return config.saveDays
+        val types = typesFile(segment).takeIf { it.isFile }?.readText() ?: return config.saveDays
+        var retention = config.saveDays
+        types.split(',').forEach { t -> t.trim().toIntOrNull()?.let { config.mRetentionTiers[it] }?.let { retention = maxOf(retention, it) } }
+        return retention
+    }
+
+    private fun delete(segment: LogSegment): Boolean {
+        if (!segment.file.delete()) return false
+        typesFile(segment).delete()
+        LogIndex.sidecar(segment.file).delete()
+        return true
+    }
+}
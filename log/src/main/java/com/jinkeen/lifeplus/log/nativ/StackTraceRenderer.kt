@@ -0,0 +1,146 @@
+package com.jinkeen.lifeplus.log.nativ
+
+/**
+ * 异常堆栈的文本渲染器
+ * --
+ * 直接遍历[Throwable.getStackTrace]生成与`printStackTrace`相同结构的文本（不含`\t`与`\r`），
+ * 不经过`PrintWriter`与正则表达式。同一位置反复抛出的异常只渲染一次，之后直接复用缓存的文本。
+ * 缓存按指纹查找，命中后还会逐一比较每一层异常的描述与堆栈帧，指纹相同的不同异常不会得到错误的文本。
+ *
+ * 非线程安全，每个实例只应在一个线程中使用。
+ *
+ * @property maxFrames 每一层异常最多输出的堆栈帧数
+ * @property maxCauses 最多输出的`Caused by`层数
+ * @property cacheSize 缓存的渲染结果数量
+ */
+internal class StackTraceRenderer(
+    private val maxFrames: Int,
+    private val maxCauses: Int,
+    private val cacheSize: Int = DEFAULT_CACHE_SIZE
+) {
+
+    companion object {
+
+        /** 默认缓存的渲染结果数量 */
+        const val DEFAULT_CACHE_SIZE = 32
+
+        private const val CAUSE_CAPTION = "Caused by: "
+    }
+
+    // 缓存的渲染结果，以及生成它的每一层异常的描述、堆栈与异常链是否被截断
+    private class Entry(
+        val descriptions: Array<String>,
+        val traces: Array<Array<StackTraceElement>>,
+        val isTruncated: Boolean,
+        val text: String
+    )
+
+    private val cache = object : LinkedHashMap<Long, Entry>(cacheSize, 0.75F, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Long, Entry>?): Boolean = size > cacheSize
+    }
+
+    // 当前被渲染异常链中每一层的异常、描述与堆栈，渲染过程中复用
+    private val chain = ArrayList<Throwable>()
+    private val descriptions = ArrayList<String>()
+    private val traces = ArrayList<Array<StackTraceElement>>()
+    private val builder = StringBuilder()
+
+    /** 缓存命中的次数 */
+    var hits = 0L
+        private set
+
+    /**
+     * 渲染异常堆栈
+     *
+     * @param tr 异常对象
+     * @return 堆栈文本
+     */
+    fun render(tr: Throwable): String {
+        try {
+            this.collect(tr)
+            val fingerprint = this.fingerprint()
+            val isTruncated = null != chain.last().cause
+            cache[fingerprint]?.let {
+                if (this.matches(it, isTruncated)) {
+                    hits++
+                    return it.text
+                }
+            }
+            builder.setLength(0)
+            for (i in chain.indices) {
+                if (i > 0) builder.append('\n').append(CAUSE_CAPTION)
+                builder.append(descriptions[i].replace("\r", "").replace("\t", ""))
+                this.appendFrames(traces[i], if (i > 0) traces[i - 1] else null)
+            }
+            if (isTruncated) builder.append("\n... causes omitted")
+            val text = builder.toString()
+            cache[fingerprint] = Entry(descriptions.toTypedArray(), traces.toTypedArray(), isTruncated, text)
+            return text
+        } finally {
+            chain.clear()
+            descriptions.clear()
+            traces.clear()
+        }
+    }
+
+    private fun collect(tr: Throwable) {
+        var t: Throwable? = tr
+        while (null != t && chain.size <= maxCauses && !chain.contains(t)) {
+            chain.add(t)
+            descriptions.add(t.toString())
+            traces.add(t.stackTrace)
+            t = t.cause
+        }
+    }
+
+    // 根据异常的描述与堆栈帧计算指纹
+    private fun fingerprint(): Long {
+        var h = 1125899906842597L
+        for (i in chain.indices) {
+            h = 31 * h + descriptions[i].hashCode()
+            for (f in traces[i]) {
+                h = 31 * h + f.className.hashCode()
+                h = 31 * h + f.methodName.hashCode()
+                h = 31 * h + f.lineNumber
+            }
+        }
+        return h
+    }
+
+    // 缓存的结果是否由与当前完全相同的异常链生成
+    private fun matches(entry: Entry, isTruncated: Boolean): Boolean {
+        if (entry.isTruncated != isTruncated || entry.descriptions.size != chain.size) return false
+        for (i in chain.indices) {
+            if (entry.descriptions[i] != descriptions[i] || !entry.traces[i].contentEquals(traces[i])) return false
+        }
+        return true
+    }
+
+    private fun appendFrames(trace: Array<StackTraceElement>, enclosing: Array<StackTraceElement>?) {
+        // 与外层异常相同的尾部堆栈帧只输出数量
+        var m = trace.size - 1
+        if (null != enclosing) {
+            var n = enclosing.size - 1
+            while (m >= 0 && n >= 0 && trace[m] == enclosing[n]) {
+                m--
+                n--
+            }
+        }
+        val common = trace.size - 1 - m
+        val shown = minOf(m + 1, maxFrames)
+        for (i in 0 until shown) this.appendFrame(trace[i])
+        val omitted = trace.size - shown
+        if (omitted > 0) builder.append("\n... ").append(omitted).append(if (common == omitted) " more" else " frames omitted")
+    }
+
+    private fun appendFrame(f: StackTraceElement) {
+        builder.append("\nat ").append(f.className).append('.').append(f.methodName).append('(')
+        when {
+            f.isNativeMethod -> builder.append("Native Method")
+            null == f.fileName -> builder.append("Unknown Source")
+            f.lineNumber >= 0 -> builder.append(f.fileName).append(':').append(f.lineNumber)
+            else -> builder.append(f.fileName)
+        }
+        builder.append(')')
+    }
+}
@@ -0,0 +1,173 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import android.util.Log
+import com.jinkeen.lifeplus.log.util.getAvailableBytes
+import com.jinkeen.lifeplus.log.util.getDirectorySize
+import java.io.File
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.LockSupport
+import kotlin.concurrent.thread
+
+/**
+ * 日志存储空间监视器
+ * --
+ * 在后台线程中定期检查日志目录所在分区的可用容量与日志目录的总大小，两次检查之间由写入线程通过[account]累计已写入的字节数进行估算。
+ * 写入线程只需读取[isWritable]，不会产生任何系统调用。
+ *
+ * 检查的间隔随剩余空间自适应调整：空间充足时最长[MAX_INTERVAL]毫秒检查一次，越接近[LogConfig.mMinSDCard]或[LogConfig.mMaxDirSize]检查越频繁，
+ * 最短[MIN_INTERVAL]毫秒；估算的写入量超过剩余空间的一半时会提前检查。
+ *
+ * 无法获取分区的可用容量时（返回0或出现异常）视为未知，保持上一次检查的结果，[MIN_INTERVAL]毫秒后重新检查。
+ *
+ * @property config 日志配置
+ * @property freeSpace 获取分区可用字节数的方法
+ * @property dirSize 获取目录总字节数的方法
+ */
+internal class StorageMonitor(
+    private val config: LogConfig,
+    private val freeSpace: (String) -> Long = ::getAvailableBytes,
+    private val dirSize: (String) -> Long = ::getDirectorySize
+) {
+
+    companion object {
+
+        private const val TAG = "StorageMonitor"
+
+        /** 最短的检查间隔毫秒数 */
+        const val MIN_INTERVAL = 1000L
+
+        /** 最长的检查间隔毫秒数 */
+        const val MAX_INTERVAL = 60 * 1000L
+    }
+
+    // 最近一次检查的结果，只会在检查时更新
+    @Volatile
+    private var free = Long.MAX_VALUE
+
+    @Volatile
+    private var dirBytes = 0L
+
+    @Volatile
+    private var lastPollTime = 0L
+
+    // 最近一次检查时距离任一限制的剩余字节数
+    @Volatile
+    private var headroom = Long.MAX_VALUE
+
+    // 最近一次检查之后估算写入的字节数
+    private val written = AtomicLong(0)
+
+    private val writable = AtomicBoolean(true)
+    private val isRunning = AtomicBoolean(false)
+
+    @Volatile
+    private var monitor: Thread? = null
+
+    // 上一次检查时可用容量是否未知，只在检查线程中使用
+    private var isUnknown = false
+
+    /**
+     * 启动后台检查线程，首次检查会立即进行。重复调用无效
+     */
+    fun start() {
+        if (!isRunning.compareAndSet(false, true)) return
+        monitor = thread(start = true, isDaemon = true, name = "log_storage_monitor") {
+            while (isRunning.get()) {
+                val interval = try {
+                    this.poll()
+                } catch (e: Exception) {
+                    Log.e(TAG, "检查存储空间出现异常", e)
+                    MAX_INTERVAL
+                }
+                if (isRunning.get()) LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(interval))
+            }
+        }
+    }
+
+    /**
+     * 停止后台检查线程
+     */
+    fun stop() {
+        if (!isRunning.compareAndSet(true, false)) return
+        LockSupport.unpark(monitor)
+        monitor = null
+    }
+
+    /**
+     * 通知检查线程立即检查一次存储空间
+     */
+    fun wake() {
+        LockSupport.unpark(monitor)
+    }
+
+    /**
+     * 写入被暂停时由写入线程调用，距离上一次检查超过[MIN_INTERVAL]毫秒时通知检查线程立即检查
+     */
+    fun recheck() {
+        if (System.currentTimeMillis() - lastPollTime >= MIN_INTERVAL) LockSupport.unpark(monitor)
+    }
+
+    /** 当前是否允许写入日志 */
+    fun isWritable(): Boolean = writable.get()
+
+    /**
+     * 累计已写入的字节数，只会在写入线程中调用
+     *
+     * @param bytes 本次写入的字节数（估算值）
+     */
+    fun account(bytes: Long) {
+        val w = written.addAndGet(bytes)
+        this.evaluate(w)
+        if (w >= headroom / 2 && System.currentTimeMillis() - lastPollTime >= MIN_INTERVAL) LockSupport.unpark(monitor)
+    }
+
+    /**
+     * 立即检查一次存储空间
+     *
+     * @return 距离下一次检查的毫秒数
+     */
+    internal fun poll(): Long {
+        val snapshot = written.get()
+        // 日志目录在写入线程初始化时才会创建，不存在时无法获取所在分区的容量
+        File(config.logDirPath).mkdirs()
+        val bytes = try {
+            freeSpace(config.logDirPath)
+        } catch (e: Exception) {
+            Log.e(TAG, "获取可用容量出现异常", e)
+            0L
+        }
+        lastPollTime = System.currentTimeMillis()
+        if (bytes <= 0L) {
+            if (!isUnknown) Log.w(TAG, "无法获取可用容量，保持上一次检查的结果")
+            isUnknown = true
+            return MIN_INTERVAL
+        }
+        isUnknown = false
+        free = bytes
+        dirBytes = if (config.mMaxDirSize > 0) dirSize(config.logDirPath) else 0L
+        // 检查之前写入的数据已计入本次结果
+        val w = written.addAndGet(-snapshot)
+        val freeRoom = free - config.mMinSDCard
+        val quotaRoom = if (config.mMaxDirSize > 0) config.mMaxDirSize - dirBytes else Long.MAX_VALUE
+        headroom = minOf(freeRoom, quotaRoom)
+        this.evaluate(w)
+        return this.interval(freeRoom, quotaRoom)
+    }
+
+    private fun evaluate(w: Long) {
+        val isFreeEnough = free - w > config.mMinSDCard
+        val isUnderQuota = config.mMaxDirSize <= 0 || dirBytes + w < config.mMaxDirSize
+        if (writable.getAndSet(isFreeEnough && isUnderQuota) != (isFreeEnough && isUnderQuota))
+            Log.w(TAG, if (isFreeEnough && isUnderQuota) "存储空间已恢复，继续写入日志" else "存储空间不足，暂停写入日志")
+    }
+
+    // 按剩余空间占限制的比例计算检查间隔，比例越小间隔越短
+    private fun interval(freeRoom: Long, quotaRoom: Long): Long {
+        val freeRatio = freeRoom.toDouble() / maxOf(config.mMinSDCard, LogConfig.M)
+        val quotaRatio = if (config.mMaxDirSize > 0) quotaRoom.toDouble() / config.mMaxDirSize else Double.MAX_VALUE
+        val ratio = minOf(freeRatio, quotaRatio).coerceAtLeast(0.0)
+        return (MAX_INTERVAL * ratio).toLong().coerceIn(MIN_INTERVAL, MAX_INTERVAL)
+    }
+}
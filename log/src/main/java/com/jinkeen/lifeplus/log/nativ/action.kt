@@ -1,17 +1,26 @@
 package com.jinkeen.lifeplus.log.nativ
 
 import android.text.TextUtils
+import com.jinkeen.lifeplus.log.LogSupplier
 
 enum class Action {
     WRITE, SEND, FLUSH
 }
 
-class LogAction(val action: Action) {
+/**
+ * 日志事件记录
+ * --
+ * 记录会被[LogEngine]回收复用，因此写入线程在消费完成后不应再持有其引用。
+ */
+class LogAction(var action: Action) {
 
-    lateinit var writeAction: WriteAction
+    /** 所属的队列分段 */
+    internal var stripe: Int = 0
+
+    var writeAction: WriteAction = WriteAction()
 }
 
-class WriteAction(val log: String) {
+class WriteAction(var log: String = "") {
     var isMainThread: Boolean = false
     var threadId: Long = 0L
     var threadName: String = ""
@@ -19,4 +28,161 @@ class WriteAction(val log: String) {
     var flag: Int = 0
 
     fun isValid(): Boolean = !TextUtils.isEmpty(log)
+
+    /** 是否带有待渲染的异常信息 */
+    internal fun hasThrowable(): Boolean = null != throwable
+
+    // 延迟格式化的日志格式与参数，由写入线程生成最终的日志内容
+    private var pattern: String? = null
+    private var supplier: LogSupplier? = null
+    private var throwable: Throwable? = null
+    private var varargs: Array<out Any?>? = null
+    private val refs = arrayOfNulls<Any>(MAX_INLINE_ARGS)
+    private val longs = LongArray(MAX_INLINE_ARGS)
+    private var longMask = 0
+    private var inlineCount = 0
+
+    /**
+     * 设置延迟格式化的日志格式，参数随后通过[arg]依次追加
+     *
+     * @param pattern 日志格式
+     * @see LogFormatter
+     */
+    fun defer(pattern: String): WriteAction {
+        this.pattern = pattern
+        return this
+    }
+
+    /**
+     * 设置延迟格式化的日志格式与全部参数
+     *
+     * @param pattern 日志格式
+     * @param args 参数，在日志写入前不应再被修改
+     */
+    fun defer(pattern: String, args: Array<out Any?>): WriteAction {
+        this.pattern = pattern
+        this.varargs = args
+        return this
+    }
+
+    /**
+     * 设置延迟生成的日志内容
+     *
+     * @param supplier 日志内容的生成者
+     */
+    fun defer(supplier: LogSupplier): WriteAction {
+        this.supplier = supplier
+        return this
+    }
+
+    /**
+     * 设置延迟渲染的异常堆栈，写入时追加在日志内容之后
+     *
+     * @param tr 异常对象
+     */
+    fun defer(tr: Throwable): WriteAction {
+        this.throwable = tr
+        return this
+    }
+
+    fun arg(arg: Any?): WriteAction {
+        refs[inlineCount++] = arg
+        return this
+    }
+
+    fun arg(arg: Long): WriteAction {
+        longMask = longMask or (1 shl inlineCount)
+        longs[inlineCount++] = arg
+        return this
+    }
+
+    internal fun argCount(): Int = varargs?.size ?: inlineCount
+
+    internal fun isLongArg(index: Int): Boolean = varargs == null && (longMask and (1 shl index)) != 0
+
+    internal fun longArg(index: Int): Long = longs[index]
+
+    internal fun refArg(index: Int): Any? = varargs.let { if (null != it) it[index] else refs[index] }
+
+    /**
+     * 在写入线程中生成延迟格式化的日志内容，非延迟的日志不做任何处理
+     *
+     * @param builder 写入线程复用的缓冲区
+     * @param renderer 写入线程的异常堆栈渲染器
+     * @return `true`表示日志内容不为空，可以写入
+     */
+    internal fun resolve(builder: StringBuilder, renderer: StackTraceRenderer): Boolean {
+        throwable?.let { tr ->
+            log = try {
+                "${log}\n${renderer.render(tr)}"
+            } catch (e: Exception) {
+                "${log}\n异常堆栈渲染失败：$e"
+            }
+            throwable = null
+        }
+        val p = pattern
+        val s = supplier
+        if (null != p || null != s) {
+            log = try {
+                if (null != s) s.get() ?: "" else {
+                    builder.setLength(0)
+                    LogFormatter.format(builder, p!!, this)
+                    builder.toString()
+                }
+            } catch (e: Exception) {
+                "日志格式化失败：${p ?: s}, $e"
+            }
+            this.clearDeferred()
+        }
+        return log.isNotEmpty()
+    }
+
+    private fun clearDeferred() {
+        pattern = null
+        supplier = null
+        throwable = null
+        varargs = null
+        for (i in 0 until inlineCount) refs[i] = null
+        longMask = 0
+        inlineCount = 0
+    }
+
+    /**
+     * 将日志的全部内容（包括时间、线程信息与延迟格式化的参数）转移到另一条记录，之后清空本记录
+     *
+     * @param target 接收内容的记录
+     */
+    internal fun moveTo(target: WriteAction) {
+        target.log = log
+        target.isMainThread = isMainThread
+        target.threadId = threadId
+        target.threadName = threadName
+        target.localTime = localTime
+        target.flag = flag
+        target.pattern = pattern
+        target.supplier = supplier
+        target.throwable = throwable
+        target.varargs = varargs
+        System.arraycopy(refs, 0, target.refs, 0, inlineCount)
+        System.arraycopy(longs, 0, target.longs, 0, inlineCount)
+        target.longMask = longMask
+        target.inlineCount = inlineCount
+        this.reset()
+    }
+
+    /** 回收前清除对日志内容的引用 */
+    fun reset() {
+        log = ""
+        threadName = ""
+        this.clearDeferred()
+    }
+
+    /** 日志内容的估算长度，用于控制批次大小 */
+    fun length(): Int = (pattern?.length ?: log.length) + threadName.length
+
+    companion object {
+
+        /** 不经过数组直接保存的参数个数 */
+        const val MAX_INLINE_ARGS = 2
+    }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package com.jinkeen.lifeplus.log.parser;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 数据块解码器：解密并解压一个数据块
+ * --
+ * 结果保存在复用的缓冲区中，同一时间只能在一个线程中使用。
+ */
+final class LogChunkDecoder {
+
+    private static final String TAG = "LogChunkDecoder";
+
+    // gzip头的标志位
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final LogDecryptor decryptor;
+
+    private final Inflater inflater = new Inflater(true);
+
+    // 解密后的gzip数据
+    private byte[] compressed = new byte[8 * 1024];
+
+    // 解压后的日志内容
+    private byte[] data = new byte[16 * 1024];
+    private int length;
+
+    /**
+     * @param keys  全部可用的密钥
+     * @param keyId 优先使用的密钥编号
+     */
+    LogChunkDecoder(List<LogKey> keys, String keyId) {
+        this.decryptor = new LogDecryptor(keys, keyId);
+    }
+
+    /**
+     * 解码一个数据块，无法解密或解压时返回{@code false}
+     *
+     * @param encrypt 数据块的密文
+     */
+    boolean decode(ByteBuffer encrypt) {
+        if (compressed.length < encrypt.remaining()) compressed = new byte[encrypt.remaining()];
+        try {
+            final int n = decryptor.decrypt(encrypt, compressed);
+            if (n >= 0) return inflate(n);
+            Log.e(TAG, "没有可以解密数据块的密钥");
+        } catch (GeneralSecurityException e) {
+            Log.e(TAG, "数据块解密异常", e);
+        } catch (DataFormatException e) {
+            Log.e(TAG, "数据块解压异常", e);
+        }
+        return false;
+    }
+
+    /** 解压后的内容，只在下次解码之前有效 */
+    byte[] data() {
+        return data;
+    }
+
+    /** 解压后的字节数 */
+    int length() {
+        return length;
+    }
+
+    // 解压gzip数据，之后的补齐字节被忽略；数据不完整时保留已解压的部分
+    private boolean inflate(int n) throws DataFormatException {
+        int off = skipHeader(n);
+        if (off < 0) {
+            Log.e(TAG, "数据块不是gzip格式");
+            return false;
+        }
+        inflater.reset();
+        inflater.setInput(compressed, off, n - off);
+        length = 0;
+        while (!inflater.finished() && !inflater.needsInput()) {
+            if (length == data.length) {
+                final byte[] grown = new byte[data.length * 2];
+                System.arraycopy(data, 0, grown, 0, length);
+                data = grown;
+            }
+            length += inflater.inflate(data, length, data.length - length);
+        }
+        return length > 0;
+    }
+
+    // 返回gzip头之后的位置，不是gzip格式时返回-1
+    private int skipHeader(int n) {
+        if (n < 10 || compressed[0] != (byte) 0x1f || compressed[1] != (byte) 0x8b || compressed[2] != 8) return -1;
+        final int flags = compressed[3];
+        int off = 10;
+        if ((flags & FEXTRA) != 0) {
+            if (off + 2 > n) return -1;
+            off += 2 + ((compressed[off] & 0xff) | (compressed[off + 1] & 0xff) << 8);
+        }
+        if ((flags & FNAME) != 0) while (off < n && compressed[off++] != 0) ;
+        if ((flags & FCOMMENT) != 0) while (off < n && compressed[off++] != 0) ;
+        if ((flags & FHCRC) != 0) off += 2;
+        return off < n ? off : -1;
+    }
+}
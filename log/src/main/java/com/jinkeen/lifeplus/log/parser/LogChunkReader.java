@@ -0,0 +1,244 @@
+package com.jinkeen.lifeplus.log.parser;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 逐个读取日志文件中的数据块
+ * --
+ * 每次调用{@link #next()}得到一个数据块解密、解压后的内容，无法解密或解压的数据块被跳过。
+ * <p>
+ * 并行度为1时依次解码，结果保存在复用的缓冲区中，内存占用取决于单个数据块的大小而不是文件大小。
+ * 并行度大于1时先扫描出全部数据块的位置，再由解析线程池同时解码后续的数据块，按原有顺序返回；
+ * 同时运行的解码任务不超过并行度，另有同样数量的数据块排队预读，内存占用同样有上限。
+ * 所有文件共用的解析线程池不超过CPU核数，同时解析多个文件时并行度之和超出的部分排队等待。
+ */
+final class LogChunkReader {
+
+    private static final String TAG = "LogChunkReader";
+
+    private static final byte ENCRYPT_CONTENT_START = 1;
+
+    private static final int MAX_THREADS = Runtime.getRuntime().availableProcessors();
+
+    // 解析线程池，所有文件共用，空闲的线程会被回收
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+            30L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new ParserThreadFactory());
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private final ByteBuffer wrap;
+
+    private final List<LogKey> keys;
+    private final String keyId;
+
+    private final int parallelism;
+
+    // 需要读取的内容在文件中的起止位置，以及当前读取的一段
+    private final int[] ranges;
+    private int range = -1;
+
+    // 依次解码时使用的解码器
+    private LogChunkDecoder decoder;
+
+    // 并行解码时全部数据块在文件中的位置与长度，以及下一个提交解码的数据块
+    private int[] offsets;
+    private int[] sizes;
+    private int count;
+    private int submitted;
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final ConcurrentLinkedQueue<LogChunkDecoder> decoders = new ConcurrentLinkedQueue<>();
+
+    // 等待运行的解码任务，以及正在运行解码任务的线程数
+    private final ConcurrentLinkedQueue<FutureTask<byte[]>> queued = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger running = new AtomicInteger();
+
+    private byte[] data;
+    private int length;
+
+    /**
+     * @param wrap        日志文件的内容，读取时移动其位置
+     * @param ranges      只读取这些起止位置之间的内容，为{@code null}时读取整个文件
+     * @param keys        全部可用的密钥
+     * @param keyId       优先使用的密钥编号
+     * @param parallelism 同时解码的线程数
+     */
+    LogChunkReader(ByteBuffer wrap, int[] ranges, List<LogKey> keys, String keyId, int parallelism) {
+        this.wrap = wrap;
+        this.ranges = ranges;
+        if (null != ranges) wrap.position(wrap.limit());
+        this.keys = keys;
+        this.keyId = keyId;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * 读取下一个数据块
+     *
+     * @return {@code false}表示已没有更多的数据块
+     */
+    boolean next() {
+        return parallelism == 1 ? nextInOrder() : nextInParallel();
+    }
+
+    /** 当前数据块解压后的内容，只在下次调用{@link #next()}之前有效 */
+    byte[] data() {
+        return data;
+    }
+
+    /** 当前数据块解压后的字节数 */
+    int length() {
+        return length;
+    }
+
+    private boolean nextInOrder() {
+        if (null == decoder) decoder = new LogChunkDecoder(keys, keyId);
+        int size;
+        while ((size = seek()) > 0) {
+            final ByteBuffer encrypt = wrap.duplicate();
+            encrypt.limit(wrap.position() + size);
+            wrap.position(wrap.position() + size);
+            if (decoder.decode(encrypt)) {
+                data = decoder.data();
+                length = decoder.length();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean nextInParallel() {
+        if (null == offsets) index();
+        while (true) {
+            while (submitted < count && pending.size() < parallelism * 2) submit(submitted++);
+            final Future<byte[]> future = pending.poll();
+            if (null == future) return false;
+            try {
+                final byte[] result = future.get();
+                if (null == result) continue;
+                data = result;
+                length = result.length;
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "数据块解码异常", e.getCause());
+            }
+        }
+    }
+
+    // 扫描全部数据块的位置
+    private void index() {
+        offsets = new int[64];
+        sizes = new int[64];
+        int size;
+        while ((size = seek()) > 0) {
+            if (count == offsets.length) {
+                final int[] grownOffsets = new int[count * 2];
+                final int[] grownSizes = new int[count * 2];
+                System.arraycopy(offsets, 0, grownOffsets, 0, count);
+                System.arraycopy(sizes, 0, grownSizes, 0, count);
+                offsets = grownOffsets;
+                sizes = grownSizes;
+            }
+            offsets[count] = wrap.position();
+            sizes[count++] = size;
+            wrap.position(wrap.position() + size);
+        }
+    }
+
+    private void submit(int index) {
+        final ByteBuffer encrypt = wrap.duplicate();
+        encrypt.limit(offsets[index] + sizes[index]).position(offsets[index]);
+        final FutureTask<byte[]> task = new FutureTask<>(() -> {
+            LogChunkDecoder d = decoders.poll();
+            if (null == d) d = new LogChunkDecoder(keys, keyId);
+            try {
+                if (!d.decode(encrypt)) return null;
+                final byte[] result = new byte[d.length()];
+                System.arraycopy(d.data(), 0, result, 0, result.length);
+                return result;
+            } finally {
+                decoders.offer(d);
+            }
+        });
+        pending.add(task);
+        queued.offer(task);
+        schedule();
+    }
+
+    // 正在运行的线程数不足并行度时再使用一个线程，每个线程依次运行排队的解码任务
+    private void schedule() {
+        while (!queued.isEmpty()) {
+            final int n = running.get();
+            if (n >= parallelism) return;
+            if (running.compareAndSet(n, n + 1)) {
+                EXECUTOR.execute(this::drain);
+                return;
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            FutureTask<byte[]> task;
+            while (null != (task = queued.poll())) task.run();
+        } finally {
+            running.decrementAndGet();
+        }
+        // 退出前刚加入的任务
+        schedule();
+    }
+
+    // 移动到下一个数据块的密文，返回密文长度；没有更多的数据块时返回-1
+    private int seek() {
+        do {
+            while (wrap.hasRemaining()) {
+                if (wrap.get() != ENCRYPT_CONTENT_START) continue;
+                if (wrap.remaining() < 4) break;
+                final int size = wrap.getInt();
+                if (size <= 0 || size > wrap.remaining()) {
+                    Log.e(TAG, "数据块不完整，长度：" + size + "，剩余：" + wrap.remaining());
+                    break;
+                }
+                return size;
+            }
+        } while (nextRange());
+        return -1;
+    }
+
+    private boolean nextRange() {
+        if (null == ranges || (range + 1) * 2 >= ranges.length) return false;
+        range++;
+        wrap.limit(ranges[range * 2 + 1]);
+        wrap.position(ranges[range * 2]);
+        return true;
+    }
+
+    private static final class ParserThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger ids = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread t = new Thread(r, "log_parser_" + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
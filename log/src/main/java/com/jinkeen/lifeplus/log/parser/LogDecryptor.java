@@ -0,0 +1,87 @@
+package com.jinkeen.lifeplus.log.parser;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.List;
+
+import javax.crypto.Cipher;
+
+/**
+ * 日志数据块解密器
+ * --
+ * 每个线程复用一个{@link Cipher}。数据块解密后应以gzip头开头，以此判断密钥是否正确：
+ * 先使用上一个数据块的密钥，不正确时依次尝试其余的密钥，因此同一个文件中不同时期的密钥写入的数据块都能解密。
+ */
+final class LogDecryptor {
+
+    private static final String TAG = "LogDecryptor";
+
+    private static final String AES_ALGORITHM_TYPE = "AES/CBC/NoPadding";
+
+    private static final int AES_BLOCK = 16;
+
+    private static final ThreadLocal<Cipher> CIPHERS = new ThreadLocal<>();
+
+    private final List<LogKey> keys;
+
+    // 上一个数据块使用的密钥
+    private LogKey current;
+
+    /**
+     * @param keys  全部可用的密钥
+     * @param keyId 优先使用的密钥编号，为{@code null}时从第一个密钥开始尝试
+     */
+    LogDecryptor(List<LogKey> keys, String keyId) {
+        this.keys = keys;
+        for (LogKey key : keys) {
+            if (key.getId().equals(keyId)) current = key;
+        }
+        if (null != keyId && null == current) Log.w(TAG, "找不到编号为" + keyId + "的密钥");
+        if (null == current && !keys.isEmpty()) current = keys.get(0);
+    }
+
+    /**
+     * 解密一个数据块
+     *
+     * @param encrypt 数据块的密文，读取后位置不变
+     * @param out     解密结果，长度不小于密文
+     * @return 解密后的字节数，没有可以解密的密钥时返回-1
+     */
+    int decrypt(ByteBuffer encrypt, byte[] out) throws GeneralSecurityException {
+        if (null == current) return -1;
+        final Cipher cipher = cipher();
+        final int n = decrypt(cipher, current, encrypt, out);
+        if (isGzip(out, n)) return n;
+        for (LogKey key : keys) {
+            if (key == current) continue;
+            // 只解密第一个加密块检查是否正确
+            final ByteBuffer head = encrypt.duplicate();
+            head.limit(head.position() + Math.min(AES_BLOCK, head.remaining()));
+            if (isGzip(out, decrypt(cipher, key, head, out))) {
+                current = key;
+                return decrypt(cipher, key, encrypt, out);
+            }
+        }
+        return -1;
+    }
+
+    private static int decrypt(Cipher cipher, LogKey key, ByteBuffer encrypt, byte[] out) throws GeneralSecurityException {
+        cipher.init(Cipher.DECRYPT_MODE, key.key(), key.iv());
+        return cipher.doFinal(encrypt.duplicate(), ByteBuffer.wrap(out));
+    }
+
+    private static boolean isGzip(byte[] out, int n) {
+        return n >= 3 && out[0] == (byte) 0x1f && out[1] == (byte) 0x8b && out[2] == 8;
+    }
+
+    private static Cipher cipher() throws GeneralSecurityException {
+        Cipher cipher = CIPHERS.get();
+        if (null == cipher) {
+            cipher = Cipher.getInstance(AES_ALGORITHM_TYPE);
+            CIPHERS.set(cipher);
+        }
+        return cipher;
+    }
+}
@@ -0,0 +1,163 @@
+package com.jinkeen.lifeplus.log.parser;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 日志文件的稀疏索引
+ * --
+ * 记录在日志文件同名的{@code .idx}文件中，写入时每次强制写入后追加一条：一段文件内容的起止位置、其中日志的最早与最晚时间、
+ * 日志条数以及日志类型的位图（每个类型按散列值对应64位中的一位）。起止位置都在数据块的边界上。
+ * <p>
+ * 按时间与类型筛选时只读取可能包含符合条件日志的内容，以及没有被索引覆盖的内容（如写入索引之前进程意外结束时写入的日志），
+ * 因此索引缺失或不完整时结果仍然正确。
+ */
+public final class LogIndex {
+
+    private static final String TAG = "LogIndex";
+
+    private static final int MAGIC = 0x4C494458;
+
+    private static final int HEADER_SIZE = 4;
+
+    // 起始位置、结束位置、最早时间、最晚时间、日志条数、类型位图
+    private static final int ENTRY_SIZE = 8 + 8 + 8 + 8 + 4 + 8;
+
+    private final long[] entries;
+    private final int count;
+
+    private LogIndex(long[] entries, int count) {
+        this.entries = entries;
+        this.count = count;
+    }
+
+    /**
+     * 获取日志文件的索引文件
+     *
+     * @param logFile 日志文件
+     */
+    public static File sidecar(File logFile) {
+        return new File(logFile.getParentFile(), logFile.getName() + ".idx");
+    }
+
+    /**
+     * 日志类型在类型位图中对应的位
+     *
+     * @param type 日志类型
+     */
+    public static long typeBit(int type) {
+        return 1L << ((type * 0x9E3779B1) >>> 26);
+    }
+
+    /**
+     * 追加一条索引
+     *
+     * @param sidecar 索引文件
+     * @param start   内容在日志文件中的起始位置
+     * @param end     内容在日志文件中的结束位置（不包括）
+     * @param minTime 其中日志的最早时间
+     * @param maxTime 其中日志的最晚时间
+     * @param count   其中日志的条数
+     * @param types   其中日志类型的位图
+     * @throws IOException 写入失败
+     */
+    public static void append(File sidecar, long start, long end, long minTime, long maxTime, int count, long types) throws IOException {
+        final boolean isNew = sidecar.length() < HEADER_SIZE;
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + ENTRY_SIZE);
+        if (isNew) buffer.putInt(MAGIC);
+        buffer.putLong(start).putLong(end).putLong(minTime).putLong(maxTime).putInt(count).putLong(types);
+        try (FileOutputStream out = new FileOutputStream(sidecar, !isNew)) {
+            out.write(buffer.array(), 0, buffer.position());
+        }
+    }
+
+    /**
+     * 读取日志文件的索引
+     *
+     * @param logFile 日志文件
+     * @return 索引文件不存在或格式不正确时返回{@code null}
+     */
+    @Nullable
+    public static LogIndex read(File logFile) {
+        final File sidecar = sidecar(logFile);
+        if (!sidecar.isFile()) return null;
+        try (FileChannel channel = new FileInputStream(sidecar).getChannel()) {
+            final ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) ;
+            buffer.flip();
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) return null;
+            // 进程意外结束时最后一条索引可能不完整，忽略
+            final int count = buffer.remaining() / ENTRY_SIZE;
+            final long[] entries = new long[count * 6];
+            for (int i = 0; i < count; i++) {
+                entries[i * 6] = buffer.getLong();
+                entries[i * 6 + 1] = buffer.getLong();
+                entries[i * 6 + 2] = buffer.getLong();
+                entries[i * 6 + 3] = buffer.getLong();
+                entries[i * 6 + 4] = buffer.getInt();
+                entries[i * 6 + 5] = buffer.getLong();
+            }
+            return new LogIndex(entries, count);
+        } catch (IOException e) {
+            Log.e(TAG, "读取日志索引异常", e);
+        }
+        return null;
+    }
+
+    /** 索引的条数 */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 计算需要读取的内容
+     *
+     * @param fileLength 日志文件的大小
+     * @param beginTime  开始时间
+     * @param endTime    结束时间
+     * @param types      日志类型，为空时不限制
+     * @return 需要读取的内容在文件中的起止位置，依次排列且互不重叠
+     */
+    int[] ranges(long fileLength, long beginTime, long endTime, int[] types) {
+        long mask = 0L;
+        for (int type : types) mask |= typeBit(type);
+        final int[] ranges = new int[(count * 2 + 1) * 2];
+        int n = 0;
+        long position = 0L;
+        for (int i = 0; i < count; i++) {
+            final long start = entries[i * 6];
+            final long end = entries[i * 6 + 1];
+            // 与之前的索引重叠或超出文件的索引不可信，之后的内容都按未覆盖处理
+            if (start < position || end < start || end > fileLength) break;
+            if (start > position) n = add(ranges, n, position, start);
+            final boolean matches = entries[i * 6 + 3] >= beginTime && entries[i * 6 + 2] <= endTime
+                    && (types.length == 0 || (entries[i * 6 + 5] & mask) != 0);
+            if (matches) n = add(ranges, n, start, end);
+            position = end;
+        }
+        if (position < fileLength) n = add(ranges, n, position, fileLength);
+        final int[] result = new int[n];
+        System.arraycopy(ranges, 0, result, 0, n);
+        return result;
+    }
+
+    // 追加一段内容，与上一段相连时合并
+    private static int add(int[] ranges, int n, long start, long end) {
+        if (start == end) return n;
+        if (n > 0 && ranges[n - 1] == start) {
+            ranges[n - 1] = (int) end;
+            return n;
+        }
+        ranges[n] = (int) start;
+        ranges[n + 1] = (int) end;
+        return n + 2;
+    }
+}
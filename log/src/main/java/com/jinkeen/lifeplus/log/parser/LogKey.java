@@ -0,0 +1,42 @@
+package com.jinkeen.lifeplus.log.parser;
+
+import androidx.annotation.NonNull;
+
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * 解析日志文件使用的密钥
+ * --
+ * 与写入时的{@code mEncryptKey16}、{@code mEncryptIv16}相同。更换过密钥时，通过编号区分不同时期的密钥。
+ */
+public final class LogKey {
+
+    private final String id;
+    private final SecretKeySpec key;
+    private final IvParameterSpec iv;
+
+    /**
+     * @param id    密钥编号
+     * @param key16 128位aes加密Key
+     * @param iv16  128位aes加密IV
+     */
+    public LogKey(@NonNull String id, @NonNull byte[] key16, @NonNull byte[] iv16) {
+        this.id = id;
+        this.key = new SecretKeySpec(key16, "AES");
+        this.iv = new IvParameterSpec(iv16);
+    }
+
+    @NonNull
+    public String getId() {
+        return id;
+    }
+
+    SecretKeySpec key() {
+        return key;
+    }
+
+    IvParameterSpec iv() {
+        return iv;
+    }
+}
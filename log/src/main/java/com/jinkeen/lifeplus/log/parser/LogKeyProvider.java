@@ -0,0 +1,21 @@
+package com.jinkeen.lifeplus.log.parser;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * 提供解析日志文件使用的密钥
+ * --
+ * 未指定密钥编号时按顺序尝试，因此当前使用的密钥应排在最前面，之后是更换前使用过的密钥。
+ *
+ * @see LogParserProtocol#LogParserProtocol(java.io.File, LogKeyProvider, String)
+ */
+public interface LogKeyProvider {
+
+    /**
+     * @return 全部可用的密钥
+     */
+    @NonNull
+    List<LogKey> getKeys();
+}
@@ -0,0 +1,105 @@
+package com.jinkeen.lifeplus.log.parser;
+
+/**
+ * 按行读取数据块中的日志记录
+ * --
+ * 完整位于一个数据块中的行直接指向数据块的内容，只有跨越数据块的行才会复制到内部的缓冲区。空行被跳过。
+ */
+final class LogLineReader {
+
+    private final LogChunkReader reader;
+
+    // 当前数据块中尚未读取的位置
+    private int position;
+
+    // 跨越数据块的半行日志
+    private byte[] carry = new byte[256];
+    private int carryLength;
+
+    private boolean isEnd;
+
+    // 当前行
+    private byte[] line;
+    private int offset;
+    private int length;
+
+    LogLineReader(LogChunkReader reader) {
+        this.reader = reader;
+        this.isEnd = null == reader;
+    }
+
+    /**
+     * 读取下一行
+     *
+     * @return {@code false}表示已没有更多的行
+     */
+    boolean next() {
+        while (!isEnd) {
+            final byte[] data = reader.data();
+            final int size = reader.length();
+            while (position < size) {
+                int end = position;
+                while (end < size && data[end] != '\n') end++;
+                if (end == size) {
+                    // 本数据块剩余的内容属于下一个数据块中的日志
+                    append(data, position, end - position);
+                    position = end;
+                    break;
+                }
+                final int start = position;
+                position = end + 1;
+                if (carryLength == 0) {
+                    if (end > start) return set(data, start, end - start);
+                } else {
+                    append(data, start, end - start);
+                    return takeCarry();
+                }
+            }
+            position = 0;
+            if (!reader.next()) {
+                isEnd = true;
+                // 最后一行没有换行符
+                if (carryLength > 0) return takeCarry();
+            }
+        }
+        return false;
+    }
+
+    /** 当前行所在的数组，只在下次调用{@link #next()}之前有效 */
+    byte[] line() {
+        return line;
+    }
+
+    /** 当前行在数组中的起始位置 */
+    int offset() {
+        return offset;
+    }
+
+    /** 当前行的字节数，不包括换行符 */
+    int length() {
+        return length;
+    }
+
+    private boolean set(byte[] line, int offset, int length) {
+        this.line = line;
+        this.offset = offset;
+        this.length = length;
+        return true;
+    }
+
+    private boolean takeCarry() {
+        final int n = carryLength;
+        carryLength = 0;
+        return set(carry, 0, n);
+    }
+
+    private void append(byte[] data, int offset, int length) {
+        if (carryLength + length > carry.length) {
+            final byte[] grown = new byte[Math.max(carry.length * 2, carryLength + length)];
+            System.arraycopy(carry, 0, grown, 0, carryLength);
+            carry = grown;
+        }
+        System.arraycopy(data, offset, carry, carryLength, length);
+        carryLength += length;
+    }
+}
@@ -2,22 +2,21 @@ package com.jinkeen.lifeplus.log.parser;
 
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.Security;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.zip.GZIPInputStream;
-
-import javax.crypto.Cipher;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
 
 import kotlin.text.Charsets;
 
@@ -25,74 +24,152 @@ public class LogParserProtocol {
 
     private static final String TAG = "LogParserProtocol";
 
-    private static final char ENCRYPT_CONTENT_START = '\1';
+    private static final AtomicBoolean initialized = new AtomicBoolean(false);
 
-    private static final String AES_ALGORITHM_TYPE = "AES/CBC/NoPadding";
+    // secure.properties中的密钥，只读取一次
+    private static volatile List<LogKey> sPropertiesKeys;
 
-    private static final AtomicBoolean initialized = new AtomicBoolean(false);
+    // 映射到内存的日志文件，不占用堆内存
+    private ByteBuffer wrap = ByteBuffer.allocate(0);
 
-    static {
-        initialize();
-    }
+    private final LogKeyProvider keyProvider;
+
+    private final String keyId;
+
+    private int parallelism = 1;
+
+    private final File logFile;
 
-    private ByteBuffer wrap;
+    // 按索引筛选后需要读取的内容，为null时读取整个文件
+    private int[] ranges;
 
+    /**
+     * 使用{@code secure.properties}中的密钥解析日志文件
+     *
+     * @param logFile 日志文件
+     */
     public LogParserProtocol(File logFile) {
-        try {
-            wrap = ByteBuffer.wrap(IOUtils.toByteArray(new FileInputStream(logFile)));
+        this(logFile, LogParserProtocol::getPropertiesKeys, null);
+    }
+
+    /**
+     * @param logFile     日志文件
+     * @param keyProvider 提供解析使用的密钥
+     */
+    public LogParserProtocol(File logFile, LogKeyProvider keyProvider) {
+        this(logFile, keyProvider, null);
+    }
+
+    /**
+     * @param logFile     日志文件
+     * @param keyProvider 提供解析使用的密钥
+     * @param keyId       文件写入时使用的密钥编号，为{@code null}时按{@link LogKeyProvider#getKeys()}的顺序尝试
+     */
+    public LogParserProtocol(File logFile, LogKeyProvider keyProvider, @Nullable String keyId) {
+        this.logFile = logFile;
+        this.keyProvider = keyProvider;
+        this.keyId = keyId;
+        initialize();
+        try (FileChannel channel = new FileInputStream(logFile).getChannel()) {
+            wrap = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
         } catch (IOException e) {
             Log.e(TAG, "日志解析创建异常", e);
         }
     }
 
+    /**
+     * 设置同时解码数据块的线程数，之后的解析生效。大于1时数据块在解析线程池中解码，结果仍按写入顺序返回；
+     * 解析线程池为所有文件共用，线程数不超过CPU核数
+     *
+     * @param parallelism 线程数，默认为1即在调用线程中依次解码
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * 根据日志文件的索引，之后的解析只读取可能包含指定时间与类型的日志的内容
+     * --
+     * 只是减少读取的内容，读取到的日志仍需按条件筛选。没有被索引覆盖的内容总是会被读取。
+     *
+     * @param beginTime 开始时间
+     * @param endTime   结束时间
+     * @param types     日志类型，为空时不限制
+     * @return {@code false}表示没有索引，将读取整个文件
+     * @see LogIndex
+     */
+    public boolean useIndex(long beginTime, long endTime, int[] types) {
+        final LogIndex index = LogIndex.read(logFile);
+        if (null == index) return false;
+        ranges = index.ranges(wrap.capacity(), beginTime, endTime, types);
+        return true;
+    }
+
+    /**
+     * 解析全部日志内容
+     * --
+     * 整个文件的内容会被读入内存，较大的文件应使用{@link #records()}逐条读取。
+     *
+     * @return 逐行的JSON日志记录
+     */
     public String process() {
-        final StringBuilder builder = new StringBuilder();
-        while (wrap.hasRemaining()) {
-            while (wrap.get() == ENCRYPT_CONTENT_START) {
-                byte[] encrypt = new byte[wrap.getInt()];
-                if (tryGetEncryptContent(encrypt)) {
-                    final String ret = decryptAndAppendFile(encrypt);
-                    if (ret != null) builder.append(ret);
-                }
-            }
+        final LogChunkReader reader = newReader();
+        if (null == reader) return "";
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            while (reader.next()) out.write(reader.data(), 0, reader.length());
+            return out.toString(Charsets.UTF_8.name());
+        } catch (IOException e) {
+            Log.e(TAG, "日志解析异常", e);
         }
-        return builder.toString();
+        return "";
     }
 
-    private boolean tryGetEncryptContent(byte[] encrypt) {
-        try {
-            wrap.get(encrypt);
-        } catch (java.nio.BufferUnderflowException e) {
-            Log.e(TAG, "尝试获取加密内容异常", e);
-            return false;
-        }
-        return true;
+    /**
+     * 逐条读取日志记录，每次只解密、解压一个数据块
+     *
+     * @return 按写入顺序排列的日志记录
+     */
+    public LogRecordIterator records() {
+        return new LogRecordIterator(newReader());
     }
 
-    private String decryptAndAppendFile(byte[] encrypt) {
-        try {
-            Cipher aesEncryptCipher = Cipher.getInstance(AES_ALGORITHM_TYPE);
-            Tuple<String, String> secureParam = getSecureParam();
-            if (secureParam == null) return null;
-            SecretKeySpec secretKeySpec = new SecretKeySpec(secureParam.first.getBytes(), "AES");
-            aesEncryptCipher.init(Cipher.DECRYPT_MODE, secretKeySpec, new IvParameterSpec(secureParam.second.getBytes()));
-            byte[] compressed = aesEncryptCipher.doFinal(encrypt);
-            byte[] plainText = decompress(compressed);
-            return new String(plainText, Charsets.UTF_8);
-        } catch (Exception e) {
-            Log.e(TAG, "解密并附加文件异常", e);
+    /**
+     * 扫描日志记录，只读取日志类型与时间进行筛选，被保留的日志以原始JSON文本交给{@code sink}，不解析日志内容
+     *
+     * @param filter 筛选条件
+     * @param sink   接收被保留的日志记录
+     * @return 被保留的日志条数
+     */
+    public int scan(LogRecordFilter filter, LogRecordSink sink) {
+        final LogLineReader reader = new LogLineReader(newReader());
+        int count = 0;
+        while (reader.next()) {
+            if (!LogRecordScanner.matches(reader.line(), reader.offset(), reader.length(), filter)) continue;
+            count++;
+            if (!sink.onRecord(reader.line(), reader.offset(), reader.length())) break;
         }
-        return null;
+        return count;
     }
 
-    private static byte[] decompress(byte[] contentBytes) {
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            IOUtils.copy(new GZIPInputStream(new ByteArrayInputStream(contentBytes)), out);
-            return out.toByteArray();
-        } catch (IOException e) {
-            Log.e(TAG, "解压异常", e);
+    private LogChunkReader newReader() {
+        final List<LogKey> keys = keyProvider.getKeys();
+        if (keys.isEmpty()) return null;
+        return new LogChunkReader(wrap.duplicate(), ranges, keys, keyId, parallelism);
+    }
+
+    private static List<LogKey> getPropertiesKeys() {
+        List<LogKey> keys = sPropertiesKeys;
+        if (null == keys) {
+            final Tuple<String, String> secureParam = getSecureParam();
+            keys = secureParam == null || secureParam.first == null || secureParam.second == null ? Collections.emptyList()
+                    : Collections.singletonList(new LogKey("", secureParam.first.getBytes(), secureParam.second.getBytes()));
+            sPropertiesKeys = keys;
         }
-        return new byte[0];
+        return keys;
     }
 
     private static Tuple<String, String> getSecureParam() {
@@ -109,9 +186,13 @@ public class LogParserProtocol {
     }
 
     // BouncyCastle作为安全提供，防止我们加密解密时候因为jdk内置的不支持改模式运行报错。
+    // 在第一次解析日志时注册，而不是在类加载时，解析总是在后台线程中进行。
     private static void initialize() {
         if (initialized.get()) return;
-        Security.addProvider(new BouncyCastleProvider());
-        initialized.set(true);
+        synchronized (initialized) {
+            if (initialized.get()) return;
+            Security.addProvider(new BouncyCastleProvider());
+            initialized.set(true);
+        }
     }
 }
@@ -0,0 +1,76 @@
+package com.jinkeen.lifeplus.log.parser;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.annotations.SerializedName;
+
+/**
+ * 日志文件中的一条日志记录
+ * --
+ * 对应文件中的一行JSON：{"c":"Log content-21660","f":101,"l":1640336274432,"n":"log","i":188,"m":false}
+ */
+public class LogRecord {
+
+    @SerializedName("c")
+    private String content;
+
+    @SerializedName("f")
+    private int type;
+
+    @SerializedName("l")
+    private long time;
+
+    @SerializedName("n")
+    private String threadName;
+
+    @SerializedName("i")
+    private long threadId;
+
+    @SerializedName("m")
+    private boolean isMainThread;
+
+    // 文件中的原始JSON文本
+    private transient String json;
+
+    /** 日志内容 */
+    public String getContent() {
+        return content;
+    }
+
+    /** 日志类型 */
+    public int getType() {
+        return type;
+    }
+
+    /** 记录日志的时间戳 */
+    public long getTime() {
+        return time;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    public long getThreadId() {
+        return threadId;
+    }
+
+    public boolean isMainThread() {
+        return isMainThread;
+    }
+
+    /** 文件中的原始JSON文本，不包括换行符 */
+    public String toJson() {
+        return json;
+    }
+
+    void setJson(String json) {
+        this.json = json;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return json;
+    }
+}
@@ -0,0 +1,16 @@
+package com.jinkeen.lifeplus.log.parser;
+
+/**
+ * 按日志类型与时间筛选日志记录，在解码日志内容之前调用
+ *
+ * @see LogParserProtocol#scan(LogRecordFilter, LogRecordSink)
+ */
+public interface LogRecordFilter {
+
+    /**
+     * @param type 日志类型
+     * @param time 记录日志的时间戳
+     * @return {@code true}表示保留该日志
+     */
+    boolean accept(int type, long time);
+}
@@ -0,0 +1,68 @@
+package com.jinkeen.lifeplus.log.parser;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 逐条读取日志文件中的日志记录
+ * --
+ * 按数据块解密、解压，每次只保留一个数据块的内容与跨越数据块的半行日志，不会将整个文件读入内存。
+ * 无法解析的行被跳过。
+ *
+ * @see LogParserProtocol#records()
+ */
+public class LogRecordIterator implements Iterator<LogRecord> {
+
+    private static final String TAG = "LogRecordIterator";
+
+    private static final Gson GSON = new Gson();
+
+    private final LogLineReader reader;
+
+    private LogRecord next;
+
+    LogRecordIterator(LogChunkReader reader) {
+        this.reader = new LogLineReader(reader);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (null == next) next = advance();
+        return null != next;
+    }
+
+    @Override
+    public LogRecord next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        final LogRecord record = next;
+        next = null;
+        return record;
+    }
+
+    private LogRecord advance() {
+        while (reader.next()) {
+            final LogRecord record = parse(reader.line(), reader.offset(), reader.length());
+            if (null != record) return record;
+        }
+        return null;
+    }
+
+    private static LogRecord parse(byte[] data, int offset, int length) {
+        final String json = new String(data, offset, length, StandardCharsets.UTF_8);
+        try {
+            final LogRecord record = GSON.fromJson(json, LogRecord.class);
+            if (null == record) return null;
+            record.setJson(json);
+            return record;
+        } catch (JsonParseException e) {
+            Log.w(TAG, "无法解析的日志：" + json, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.jinkeen.lifeplus.log.parser;
+
+/**
+ * 日志记录扫描器
+ * --
+ * 日志记录是只有一层的JSON对象（{@code c/f/l/n/i/m}字段），直接在UTF-8字节中跳过字符串字段，只读取{@code f}与{@code l}两个数字，
+ * 不生成任何对象。读取到这两个字段后不再扫描之后的内容。
+ */
+final class LogRecordScanner {
+
+    private LogRecordScanner() {
+    }
+
+    /**
+     * 判断日志记录是否被保留，格式不正确或缺少类型与时间的记录不被保留
+     *
+     * @param json   日志记录的JSON文本
+     * @param offset 起始位置
+     * @param length 字节数
+     * @param filter 筛选条件
+     */
+    static boolean matches(byte[] json, int offset, int length, LogRecordFilter filter) {
+        final int end = offset + length;
+        int i = skipSpace(json, offset, end);
+        if (i == end || json[i] != '{') return false;
+        i++;
+        long type = 0;
+        long time = 0;
+        boolean hasType = false;
+        boolean hasTime = false;
+        while (!(hasType && hasTime)) {
+            i = skipSpace(json, i, end);
+            if (i == end || json[i] == '}') return false;
+            if (json[i] == ',') {
+                i++;
+                continue;
+            }
+            if (json[i] != '"') return false;
+            final int key = i + 1;
+            i = skipString(json, i, end);
+            if (i < 0) return false;
+            // 只关心单个字符的字段名
+            final byte name = i - key == 2 ? json[key] : 0;
+            i = skipSpace(json, i, end);
+            if (i == end || json[i] != ':') return false;
+            i = skipSpace(json, i + 1, end);
+            if (i == end) return false;
+            if (name == 'f' || name == 'l') {
+                boolean negative = false;
+                if (json[i] == '-') {
+                    negative = true;
+                    i++;
+                }
+                final int digits = i;
+                long value = 0;
+                while (i < end && json[i] >= '0' && json[i] <= '9') value = value * 10 + (json[i++] - '0');
+                if (i == digits) return false;
+                if (negative) value = -value;
+                if (name == 'f') {
+                    type = value;
+                    hasType = true;
+                } else {
+                    time = value;
+                    hasTime = true;
+                }
+            } else if (json[i] == '"') {
+                i = skipString(json, i, end);
+                if (i < 0) return false;
+            } else {
+                // 数字、布尔值或null
+                while (i < end && json[i] != ',' && json[i] != '}') {
+                    if (json[i] == '{' || json[i] == '[') return false;
+                    i++;
+                }
+            }
+        }
+        return filter.accept((int) type, time);
+    }
+
+    // 跳过从start开始的字符串，返回结束引号之后的位置，字符串不完整时返回-1
+    private static int skipString(byte[] json, int start, int end) {
+        for (int i = start + 1; i < end; i++) {
+            final byte b = json[i];
+            if (b == '\\') i++;
+            else if (b == '"') return i + 1;
+        }
+        return -1;
+    }
+
+    private static int skipSpace(byte[] json, int i, int end) {
+        while (i < end && (json[i] == ' ' || json[i] == '\t' || json[i] == '\r')) i++;
+        return i;
+    }
+}
@@ -0,0 +1,17 @@
+package com.jinkeen.lifeplus.log.parser;
+
+/**
+ * 接收筛选后的日志记录
+ *
+ * @see LogParserProtocol#scan(LogRecordFilter, LogRecordSink)
+ */
+public interface LogRecordSink {
+
+    /**
+     * @param json   日志记录的原始JSON文本（UTF-8），不包括换行符；数组只在本次调用中有效，不应保存其引用
+     * @param offset 日志记录在数组中的起始位置
+     * @param length 日志记录的字节数
+     * @return {@code false}表示停止扫描
+     */
+    boolean onRecord(byte[] json, int offset, int length);
+}
@@ -4,19 +4,17 @@ package com.jinkeen.lifeplus.log.util
 
 import android.os.StatFs
 import android.util.Log
-import java.text.SimpleDateFormat
+import java.io.File
 import java.util.*
 
 private const val TAG = "LogUtils"
 
-private val sDateFormat = SimpleDateFormat("yyyyMMdd", Locale.CHINA)
-
 /**
  * 获取当前日期（`yyyy-MM-dd`）的13位时间戳表示形式
  *
  * @return 返回系统当前的日期时间戳，若出现异常返回`0`
  */
-fun getCurrentDateTimemillis(): Long = sDateFormat.parse(sDateFormat.format(Date()))?.time ?: 0L
+fun getCurrentDateTimemillis(): Long = escapeTimemillis(System.currentTimeMillis())
 
 /**
  * 将原始的13位原始时间戳转义成只有年月日的时间戳，其结果只表示当前0点0分0秒的时间戳
@@ -24,7 +22,26 @@ fun getCurrentDateTimemillis(): Long = sDateFormat.parse(sDateFormat.format(Date
  * @param oTime 原始13位完整时间戳
  * @return 返回转义后的时间戳。
  */
-fun escapeTimemillis(oTime: Long): Long = sDateFormat.parse(sDateFormat.format(oTime))?.time ?: oTime
+fun escapeTimemillis(oTime: Long): Long = Calendar.getInstance().run {
+    timeInMillis = oTime
+    set(Calendar.HOUR_OF_DAY, 0)
+    set(Calendar.MINUTE, 0)
+    set(Calendar.SECOND, 0)
+    set(Calendar.MILLISECOND, 0)
+    timeInMillis
+}
+
+/**
+ * 获取指定日期下一天0点0分0秒的时间戳，按日历计算，夏令时切换的日期同样准确
+ *
+ * @param oTime 原始13位完整时间戳
+ * @return 返回下一天的时间戳
+ */
+fun nextDayTimemillis(oTime: Long): Long = Calendar.getInstance().run {
+    timeInMillis = escapeTimemillis(oTime)
+    add(Calendar.DAY_OF_MONTH, 1)
+    timeInMillis
+}
 
 /**
  * 检查`SDCard`中目标文件的现有总容量是否还允许被写入目标容量的数据
@@ -33,11 +50,30 @@ fun escapeTimemillis(oTime: Long): Long = sDateFormat.parse(sDateFormat.format(o
  * @param capacity 要被写入的目标数据的容量
  * @return `true`表示允许，否则返回`false`
  */
-fun isCanWriteSDCard(path: String, capacity: Long): Boolean = try {
+fun isCanWriteSDCard(path: String, capacity: Long): Boolean = getAvailableBytes(path) > capacity
+
+/**
+ * 获取`SDCard`中目标文件所在分区的可用容量
+ *
+ * @param path 要被检查的目标文件路径
+ * @return 返回可用的字节数，若出现异常返回`0`
+ */
+fun getAvailableBytes(path: String): Long = try {
     val stat = StatFs(path)
-    val total = stat.blockSizeLong * stat.availableBlocksLong
-    total > capacity
+    stat.blockSizeLong * stat.availableBlocksLong
 } catch (e: IllegalArgumentException) {
     Log.e(TAG, "检查SD卡可写入容量出现异常", e)
-    false
+    0L
+}
+
+/**
+ * 统计目录中所有文件（不含子目录）的总字节数
+ *
+ * @param path 目录路径
+ * @return 返回总字节数，目录不存在时返回`0`
+ */
+fun getDirectorySize(path: String): Long {
+    var total = 0L
+    File(path).listFiles()?.forEach { if (it.isFile) total += it.length() }
+    return total
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package com.jinkeen.lifeplus.log
+
+import com.jinkeen.lifeplus.log.nativ.LogConfig
+import com.jinkeen.lifeplus.log.nativ.LogSegment
+import com.jinkeen.lifeplus.log.parser.LogKey
+import com.jinkeen.lifeplus.log.parser.LogKeyProvider
+import com.jinkeen.lifeplus.log.parser.LogParserProtocol
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+
+class JKLogTest {
+
+    private val dir: File = Files.createTempDirectory("log_jklog").toFile()
+
+    private fun config() = LogConfig(File(dir, "cache").absolutePath, File(dir, "log").absolutePath, ByteArray(16), ByteArray(16))
+
+    @After
+    fun clean() {
+        dir.deleteRecursively()
+    }
+
+    @Test
+    fun inProcessModeIsReadyAfterInit() {
+        JKLog.init(config())
+        // 不需要等待服务绑定，初始化返回后即可记录日志
+        JKLog.w(101, "startup")
+        JKLog.w(101, "user {} cost {}ms", "a", 12L)
+        JKLog.f()
+        JKLog.quit(true)
+        // 停止后仍在运行的线程记录的日志被丢弃并计数，不会抛出异常
+        val dropped = JKLog.getDroppedCount()
+        JKLog.w(101, "after quit")
+        JKLog.w(101, "user {}", "b")
+        JKLog.e(500, "after quit", RuntimeException())
+        assertEquals(dropped + 3, JKLog.getDroppedCount())
+        assertEquals(listOf("startup", "user a cost 12ms"), readBack())
+    }
+
+    // 读取日志目录中全部日志的内容
+    private fun readBack(): List<String> {
+        val keys = LogKeyProvider { listOf(LogKey("", ByteArray(16), ByteArray(16))) }
+        return LogSegment.list(File(dir, "log")).flatMap { segment ->
+            LogParserProtocol(segment.file, keys).records().asSequence().map { it.content }.toList()
+        }
+    }
+
+    @Test
+    fun canInitAgainAfterQuit() {
+        JKLog.init(config())
+        JKLog.init(config())
+        JKLog.w(101, "first")
+        JKLog.quit(true)
+        assertEquals(listOf("first"), readBack())
+
+        // 同一天内重新初始化后，日志继续写入当天的文件
+        JKLog.init(config())
+        JKLog.w(101, "again")
+        JKLog.quit(true)
+        assertEquals(listOf("first", "again"), readBack())
+    }
+}
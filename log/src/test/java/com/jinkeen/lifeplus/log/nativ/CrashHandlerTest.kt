@@ -0,0 +1,73 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Test
+
+class CrashHandlerTest {
+
+    private val original = Thread.getDefaultUncaughtExceptionHandler()
+
+    @After
+    fun restore() {
+        Thread.setDefaultUncaughtExceptionHandler(original)
+    }
+
+    @Test
+    fun recordsBeforeChainingToPrevious() {
+        val calls = arrayListOf<String>()
+        Thread.setDefaultUncaughtExceptionHandler { _, e -> calls.add("previous:${e.message}") }
+        CrashHandler.install { t, e -> calls.add("record:${t.name}:${e.message}") }
+        val crash = Thread({ throw IllegalStateException("boom") }, "crash-thread")
+        crash.start()
+        crash.join()
+        assertEquals(listOf("record:crash-thread:boom", "previous:boom"), calls)
+    }
+
+    @Test
+    fun failingRecordStillChains() {
+        var chained = false
+        Thread.setDefaultUncaughtExceptionHandler { _, _ -> chained = true }
+        CrashHandler.install { _, _ -> throw RuntimeException("记录失败") }
+        Thread.getDefaultUncaughtExceptionHandler()!!.uncaughtException(Thread.currentThread(), Error("crash"))
+        assertTrue(chained)
+    }
+
+    @Test
+    fun reinstallDoesNotChainToItself() {
+        var previous = 0
+        var recorded = ""
+        Thread.setDefaultUncaughtExceptionHandler { _, _ -> previous++ }
+        CrashHandler.install { _, _ -> recorded += "a" }
+        CrashHandler.install { _, _ -> recorded += "b" }
+        Thread.getDefaultUncaughtExceptionHandler()!!.uncaughtException(Thread.currentThread(), Error("crash"))
+        assertEquals("b", recorded)
+        assertEquals(1, previous)
+    }
+
+    @Test
+    fun laterCrashesAreRecordedWhenPreviousDoesNotExit() {
+        val recorded = arrayListOf<String>()
+        Thread.setDefaultUncaughtExceptionHandler { _, _ -> }
+        CrashHandler.install { _, e -> recorded.add(e.message!!) }
+        val handler = Thread.getDefaultUncaughtExceptionHandler()!!
+        handler.uncaughtException(Thread.currentThread(), Error("first"))
+        handler.uncaughtException(Thread.currentThread(), Error("second"))
+        assertEquals(listOf("first", "second"), recorded)
+    }
+
+    @Test
+    fun crashWhileRecordingIsOnlyChained() {
+        val recorded = arrayListOf<String>()
+        var chained = 0
+        Thread.setDefaultUncaughtExceptionHandler { _, _ -> chained++ }
+        CrashHandler.install { t, e ->
+            recorded.add(e.message!!)
+            // 记录过程中再次崩溃
+            if (recorded.size == 1) Thread.getDefaultUncaughtExceptionHandler()!!.uncaughtException(t, Error("nested"))
+        }
+        Thread.getDefaultUncaughtExceptionHandler()!!.uncaughtException(Thread.currentThread(), Error("crash"))
+        assertEquals(listOf("crash"), recorded)
+        assertEquals(2, chained)
+    }
+}
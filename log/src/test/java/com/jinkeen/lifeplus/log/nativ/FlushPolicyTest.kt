@@ -0,0 +1,96 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class FlushPolicyTest {
+
+    private fun policy(
+        count: Int = 0,
+        bytes: Long = 0L,
+        latency: Long = 0L,
+        types: IntArray = intArrayOf(),
+        coalesce: Long = 200L
+    ) = FlushPolicy(
+        LogConfig(
+            "cache", "log", ByteArray(16), ByteArray(16),
+            mFlushCount = count,
+            mFlushBytes = bytes,
+            mFlushLatency = latency,
+            mFlushTypes = types,
+            mFlushCoalesce = coalesce
+        )
+    )
+
+    private fun write(log: String = "Log content", type: Int = 101) = WriteAction(log).apply { flag = type }
+
+    @Test
+    fun disabledByDefault() {
+        val policy = policy()
+        repeat(10_000) { policy.onWrite(write(), 1000L) }
+        assertFalse(policy.shouldFlush(1_000_000L))
+        assertEquals(-1L, policy.delay(1_000_000L))
+    }
+
+    @Test
+    fun countAndBytesThresholds() {
+        val byCount = policy(count = 3)
+        byCount.onWrite(write(), 0)
+        byCount.onWrite(write(), 0)
+        assertFalse(byCount.shouldFlush(0))
+        byCount.onWrite(write(), 0)
+        assertTrue(byCount.shouldFlush(0))
+        byCount.onFlushed(0)
+        assertFalse(byCount.shouldFlush(0))
+
+        val byBytes = policy(bytes = 10)
+        byBytes.onWrite(write("12345"), 0)
+        assertFalse(byBytes.shouldFlush(0))
+        byBytes.onWrite(write("67890"), 0)
+        assertTrue(byBytes.shouldFlush(0))
+    }
+
+    @Test
+    fun latencyIsMeasuredFromOldestRecord() {
+        val policy = policy(latency = 500)
+        assertEquals(-1L, policy.delay(1000))
+        policy.onWrite(write(), 1000)
+        policy.onWrite(write(), 1400)
+        assertEquals(500L, policy.delay(1000))
+        assertEquals(100L, policy.delay(1400))
+        assertFalse(policy.shouldFlush(1499))
+        assertTrue(policy.shouldFlush(1500))
+        assertEquals(0L, policy.delay(1600))
+        policy.onFlushed(1600)
+        assertEquals(-1L, policy.delay(1600))
+    }
+
+    @Test
+    fun errorTypesFlushImmediately() {
+        val policy = policy(types = intArrayOf(500, 200))
+        policy.onWrite(write(type = 101), 0)
+        assertFalse(policy.shouldFlush(0))
+        policy.onWrite(write(type = 500), 0)
+        assertTrue(policy.shouldFlush(0))
+    }
+
+    @Test
+    fun explicitRequestsAreCoalesced() {
+        val policy = policy(coalesce = 200)
+        policy.request()
+        assertTrue(policy.shouldFlush(1000))
+        policy.onFlushed(1000)
+
+        // 间隔内的请求被合并，延后到间隔结束
+        policy.onWrite(write(), 1050)
+        policy.request()
+        policy.request()
+        assertFalse(policy.shouldFlush(1100))
+        assertEquals(100L, policy.delay(1100))
+        assertTrue(policy.isRequested())
+        assertTrue(policy.shouldFlush(1200))
+        policy.onFlushed(1200)
+        assertFalse(policy.isRequested())
+        assertFalse(policy.shouldFlush(5000))
+    }
+}
@@ -0,0 +1,225 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import com.dianping.logan.*
+import com.google.gson.JsonParser
+import com.jinkeen.lifeplus.log.parser.LogParserProtocol
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.util.concurrent.locks.LockSupport
+import java.util.zip.Inflater
+import javax.crypto.Cipher
+import javax.crypto.spec.IvParameterSpec
+import javax.crypto.spec.SecretKeySpec
+
+class JvmLoganProtocolTest {
+
+    // 与测试资源secure.properties中的密钥相同，解析时使用
+    private val key = "0123456789012345"
+
+    private val root: File = Files.createTempDirectory("log_jvm").toFile()
+    private val cache = File(root, "cache").absolutePath
+    private val dir = File(root, "log")
+
+    @After
+    fun clean() {
+        root.deleteRecursively()
+    }
+
+    private fun open(maxFile: Int = 10 * 1024 * 1024, name: String = "1640275200000") = JvmLoganProtocol().also {
+        assertEquals(CLOGAN_INIT_SUCCESS_MMAP, it.clogan_init(cache, dir.absolutePath, maxFile, key, key))
+        assertEquals(CLOGAN_OPEN_SUCCESS, it.clogan_open(name))
+    }
+
+    // 交出当前暂存区并等待封装完成
+    private fun JvmLoganProtocol.sync() {
+        clogan_flush()
+        assertTrue(awaitSealed(10_000))
+    }
+
+    private fun parse(name: String = "1640275200000") = LogParserProtocol(File(dir, name)).process()
+        .split("\n").filter { it.isNotEmpty() }.map { JsonParser.parseString(it).asJsonObject }
+
+    // 像逐个数据块解码的解析工具一样，分别解密、解压每个数据块并按UTF-8严格解码
+    private fun blocks(name: String = "1640275200000"): List<String> {
+        val bytes = File(dir, name).readBytes()
+        val cipher = Cipher.getInstance("AES/CBC/NoPadding")
+        val blocks = ArrayList<String>()
+        var position = 0
+        while (position < bytes.size) {
+            assertEquals(1, bytes[position].toInt())
+            val length = ByteBuffer.wrap(bytes, position + 1, 4).int
+            cipher.init(Cipher.DECRYPT_MODE, SecretKeySpec(key.toByteArray(), "AES"), IvParameterSpec(key.toByteArray()))
+            val gzip = cipher.doFinal(bytes, position + 5, length)
+            val inflater = Inflater(true).apply { setInput(gzip, 10, gzip.size - 10) }
+            val raw = ByteArrayOutputStream()
+            val buffer = ByteArray(8192)
+            while (!inflater.finished()) raw.write(buffer, 0, inflater.inflate(buffer))
+            blocks.add(StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(raw.toByteArray())).toString())
+            position += length + 6
+        }
+        return blocks
+    }
+
+    @Test
+    fun writesFormatReadableByParser() {
+        val protocol = open()
+        assertEquals(CLOGAN_WRITE_SUCCESS, protocol.clogan_write(101, "Log content-1", 1640336274432, "main", 2, 1))
+        protocol.clogan_write(102, "引号\"、反斜杠\\、换行\n、制表\t、控制\u0001与表情😀", 1640336274433, "log\"worker", 188, 0)
+        protocol.sync()
+
+        val logs = parse()
+        assertEquals(2, logs.size)
+        logs[0].let {
+            assertEquals("Log content-1", it["c"].asString)
+            assertEquals(101, it["f"].asInt)
+            assertEquals(1640336274432, it["l"].asLong)
+            assertEquals("main", it["n"].asString)
+            assertEquals(2L, it["i"].asLong)
+            assertTrue(it["m"].asBoolean)
+        }
+        assertEquals("引号\"、反斜杠\\、换行\n、制表\t、控制\u0001与表情😀", logs[1]["c"].asString)
+        assertEquals("log\"worker", logs[1]["n"].asString)
+        assertFalse(logs[1]["m"].asBoolean)
+    }
+
+    @Test
+    fun manyBlocksAndLargeRecordsKeepOrder() {
+        val protocol = open()
+        val large = "x".repeat(200 * 1024)
+        for (i in 0 until 3000) protocol.clogan_write(101, if (i == 1500) large else "Log content-$i", i.toLong(), "main", 1, 1)
+        protocol.sync()
+        val logs = parse()
+        assertEquals(3000, logs.size)
+        assertEquals((0 until 3000).map { it.toLong() }, logs.map { it["l"].asLong })
+        assertEquals(large, logs[1500]["c"].asString)
+    }
+
+    @Test
+    fun multiByteRecordsAreNotSplitAcrossSlots() {
+        // 暂存区小于单个数据块，每个暂存区封装为一个数据块，解析时按数据块分别解码
+        val protocol = JvmLoganProtocol(1000, 3).also {
+            it.clogan_init(cache, dir.absolutePath, Int.MAX_VALUE, key, key)
+            it.clogan_open("1640275200000")
+        }
+        val logs = (0 until 300).map { "中文日志内容-$it-" + "测".repeat(it % 37) } + "超长记录".repeat(400)
+        logs.forEachIndexed { i, log -> protocol.clogan_write(101, log, i.toLong(), "main", 1, 1) }
+        protocol.sync()
+        val blocks = blocks()
+        // 只有超过暂存区大小的最后一条记录被拆分
+        assertTrue(blocks.dropLast(1).count { !it.endsWith("\n") } in 1..5)
+        assertEquals(logs, blocks.joinToString("").split("\n").filter { it.isNotEmpty() }.map { JsonParser.parseString(it).asJsonObject["c"].asString })
+    }
+
+    @Test
+    fun blocksEndBetweenRecords() {
+        val protocol = open()
+        val large = "超长记录".repeat(3000)
+        val logs = (0 until 2000).map { "中文日志内容-$it-" + "测".repeat(it % 97) } + large + "之后的日志"
+        logs.forEachIndexed { i, log -> protocol.clogan_write(101, log, i.toLong(), "main", 1, 1) }
+        protocol.sync()
+        val blocks = blocks()
+        assertTrue(blocks.size > 20)
+        // 只有超过数据块上限的记录被拆分
+        assertTrue(blocks.filter { !it.contains("超长记录") }.all { it.endsWith("\n") })
+        assertEquals(logs, blocks.joinToString("").split("\n").filter { it.isNotEmpty() }.map { JsonParser.parseString(it).asJsonObject["c"].asString })
+    }
+
+    @Test
+    fun closeSealsPendingRecordsAndStopsSealer() {
+        fun sealers() = Thread.getAllStackTraces().keys.count { it.name == "log_jvm_sealer" }
+        val before = sealers()
+        val protocol = open()
+        assertEquals(before + 1, sealers())
+        repeat(100) { protocol.clogan_write(101, "before close $it", it.toLong(), "main", 1, 1) }
+        assertTrue(protocol.close(10_000))
+        assertEquals(before, sealers())
+        assertEquals(100, parse().size)
+        assertEquals(CLOGAN_WRITE_FAIL_HEADER, protocol.clogan_write(101, "after close", 0, "main", 1, 1))
+    }
+
+    @Test
+    fun cacheSurvivesProcessDeath() {
+        val protocol = open()
+        for (i in 0 until 400) protocol.clogan_write(101, "before crash $i", i.toLong(), "main", 1, 1)
+        // 不强制写入，模拟进程结束后重新初始化
+        assertFalse(File(dir, "1640275200000").exists() && parse().size == 400)
+        open(name = "1640361600000")
+        val logs = parse()
+        assertEquals((0 until 400).map { "before crash $it" }, logs.map { it["c"].asString })
+    }
+
+    @Test
+    fun rejectsWritesWhenFileIsFull() {
+        val protocol = open(maxFile = 4 * 1024)
+        var code = CLOGAN_WRITE_SUCCESS
+        var written = 0
+        while (written < 10_000) {
+            code = protocol.clogan_write(101, "Log content-$written-${"y".repeat(64)}", 0, "main", 1, 1)
+            if (code != CLOGAN_WRITE_SUCCESS) break
+            written++
+            if (written % 50 == 0) protocol.sync()
+        }
+        assertEquals(CLOAGN_WRITE_FAIL_MAXFILE, code)
+        protocol.sync()
+        assertEquals(written, parse().size)
+        // 切换到新文件后可以继续写入
+        assertEquals(CLOGAN_OPEN_SUCCESS, protocol.clogan_open("1640361600000"))
+        assertEquals(CLOGAN_WRITE_SUCCESS, protocol.clogan_write(101, "next", 0, "main", 1, 1))
+    }
+
+    // JVM实现的写入速度，与底层库的对比见instrumented测试LoganWriteBenchmark
+    @Test
+    fun writeThroughput() {
+        val count = 50_000
+        val log = "用户123在页面Home点击了按钮Submit，耗时45ms，请求参数：{id=9527, from=push}"
+        fun bench(name: String, protocol: LoganProtocolHandler) {
+            protocol.clogan_init(File(root, "cache-$name").absolutePath, File(root, name).absolutePath, Int.MAX_VALUE, key, key)
+            protocol.clogan_open("1640275200000")
+            repeat(2000) { protocol.clogan_write(101, log, it.toLong(), "main", 1, 1) }
+            val begin = System.nanoTime()
+            repeat(count) { protocol.clogan_write(101, log, it.toLong(), "main", 1, 1) }
+            protocol.clogan_flush()
+            if (protocol is JvmLoganProtocol) protocol.awaitSealed(60_000)
+            val nanos = System.nanoTime() - begin
+            val size = File(File(root, name), "1640275200000").length()
+            println("${name}写入吞吐量：${count * 1_000_000_000L / nanos}条/秒，平均${nanos / count}ns/条，文件${size / 1024}KB")
+        }
+        bench("JVM实现", JvmLoganProtocol())
+    }
+
+    // 封装1MB暂存区期间的单条写入延迟：在写入线程中封装与交给封装线程对比
+    @Test
+    fun sealingDoesNotStallWrites() {
+        val slot = 1024 * 1024
+        val log = "用户123在页面Home点击了按钮Submit，耗时45ms，请求参数：{id=9527, from=push}"
+        fun bench(name: String, isAsync: Boolean): LongArray {
+            val protocol = JvmLoganProtocol(slot, 3, isAsync)
+            protocol.clogan_init(File(root, "cache-$name").absolutePath, File(root, name).absolutePath, Int.MAX_VALUE, key, key)
+            protocol.clogan_open("1640275200000")
+            repeat(20_000) { protocol.clogan_write(101, log, it.toLong(), "main", 1, 1) }
+            protocol.sync()
+            // 写满约6个暂存区，期间有多次封装；每批日志之间稍作停顿，写入速度低于封装速度，不会等待空闲的暂存区
+            val latencies = LongArray(40_000)
+            for (i in latencies.indices) {
+                val begin = System.nanoTime()
+                protocol.clogan_write(101, log, i.toLong(), "main", 1, 1)
+                latencies[i] = System.nanoTime() - begin
+                if (i % 100 == 99) LockSupport.parkNanos(1_000_000)
+            }
+            protocol.sync()
+            latencies.sort()
+            println("${name}：p50 ${latencies[latencies.size / 2] / 1000}us，p99 ${latencies[latencies.size * 99 / 100] / 1000}us，" +
+                    "p99.99 ${latencies[latencies.size * 9999 / 10000] / 1000}us，最大 ${latencies.last() / 1000}us")
+            return latencies
+        }
+        val inline = bench("写入线程中封装", false)
+        val async = bench("封装线程中封装", true)
+        assertTrue(async.last() < inline.last())
+    }
+}
@@ -0,0 +1,72 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import com.jinkeen.lifeplus.log.LogSupplier
+import org.junit.Assert.*
+import org.junit.Test
+import kotlin.concurrent.thread
+
+class LogCaptureBufferTest {
+
+    // 记录直接写入的日志
+    private class Recorder : LogWriter {
+        val logs = arrayListOf<String>()
+        override fun write(log: String, type: Int) { logs.add("$type:$log") }
+        override fun write(log: String, type: Int, tr: Throwable) { logs.add("$type:$log:${tr.message}") }
+        override fun write(type: Int, pattern: String, arg: Any?) { logs.add("$type:$pattern") }
+        override fun write(type: Int, pattern: String, arg: Long) { logs.add("$type:$pattern") }
+        override fun write(type: Int, pattern: String, arg1: Any?, arg2: Any?) { logs.add("$type:$pattern") }
+        override fun write(type: Int, pattern: String, arg1: Any?, arg2: Long) { logs.add("$type:$pattern") }
+        override fun write(type: Int, pattern: String, arg1: Long, arg2: Long) { logs.add("$type:$pattern") }
+        override fun write(type: Int, pattern: String, args: Array<out Any?>) { logs.add("$type:$pattern") }
+        override fun write(type: Int, supplier: LogSupplier) { logs.add("$type:${supplier.get()}") }
+    }
+
+    private val renderer = StackTraceRenderer(4, 1)
+
+    // 模拟写入线程，生成转交的日志内容
+    private fun replay(buffer: LogCaptureBuffer, recorder: Recorder, replayed: MutableList<WriteAction>) {
+        buffer.replayTo(recorder) { w ->
+            val target = WriteAction()
+            w.moveTo(target)
+            target.resolve(StringBuilder(), renderer)
+            replayed.add(target)
+        }
+    }
+
+    @Test
+    fun replaysInCallOrderWithOriginalThreadAndTime() {
+        val buffer = LogCaptureBuffer()
+        val before = System.currentTimeMillis()
+        buffer.write("first", 101)
+        buffer.write(102, "user {} cost {}ms", "a", 12L)
+        thread(name = "worker") { buffer.write(103) { "lazy" } }.join()
+        buffer.write("crash", 500, IllegalStateException("boom"))
+
+        val replayed = arrayListOf<WriteAction>()
+        val recorder = Recorder()
+        replay(buffer, recorder, replayed)
+        assertEquals(listOf("first", "user a cost 12ms", "lazy"), replayed.take(3).map { it.log })
+        assertTrue(replayed[3].log.startsWith("crash\njava.lang.IllegalStateException: boom"))
+        assertEquals(listOf(101, 102, 103, 500), replayed.map { it.flag })
+        assertEquals("worker", replayed[2].threadName)
+        assertEquals(Thread.currentThread().id, replayed[0].threadId)
+        assertTrue(replayed.all { it.localTime >= before })
+        assertTrue(recorder.logs.isEmpty())
+
+        // 转交之后直接转发
+        buffer.write("after", 101)
+        assertEquals(listOf("101:after"), recorder.logs)
+        assertEquals(4, replayed.size)
+    }
+
+    @Test
+    fun overflowIsCountedAndReported() {
+        val buffer = LogCaptureBuffer(4)
+        repeat(10) { buffer.write("log-$it", 101 + it) }
+        val replayed = arrayListOf<WriteAction>()
+        val recorder = Recorder()
+        replay(buffer, recorder, replayed)
+        assertEquals(listOf("log-0", "log-1", "log-2", "log-3"), replayed.map { it.log })
+        assertEquals(listOf("105:初始化之前暂存区已满，丢弃了6条日志"), recorder.logs)
+    }
+}
@@ -0,0 +1,76 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class LogDeduplicatorTest {
+
+    private fun log(log: String, time: Long, type: Int = 101, threadId: Long = 1L) = WriteAction(log).apply {
+        flag = type
+        localTime = time
+        this.threadId = threadId
+    }
+
+    // 模拟写入线程，返回最终写入的日志内容
+    private fun feed(dedupe: LogDeduplicator, vararg logs: WriteAction): List<String> {
+        val out = arrayListOf<WriteAction>()
+        logs.forEach { if (dedupe.accept(it, out)) out.add(it) }
+        return out.map { it.log }
+    }
+
+    @Test
+    fun repeatsWithinWindowAreCollapsed() {
+        val dedupe = LogDeduplicator(1000)
+        val written = feed(dedupe, *Array(100) { log("retry", it.toLong()) }, log("done", 200))
+        assertEquals(listOf("retry", "done"), written)
+
+        val out = arrayListOf<WriteAction>()
+        assertEquals(1000L - 500, dedupe.expire(500, out))
+        assertTrue(out.isEmpty())
+        assertEquals(-1L, dedupe.expire(1000, out))
+        assertEquals(1, out.size)
+        assertEquals("上一条日志重复了99次，首次：0，最后：99，内容：retry", out[0].log)
+        assertEquals(101, out[0].flag)
+        assertEquals(99L, out[0].localTime)
+    }
+
+    @Test
+    fun typeAndThreadAreDistinct() {
+        val dedupe = LogDeduplicator(1000)
+        val written = feed(dedupe, log("a", 0), log("a", 1, type = 102), log("a", 2, threadId = 2), log("a", 3))
+        assertEquals(listOf("a", "a", "a"), written)
+    }
+
+    @Test
+    fun messageAfterWindowStartsNewWindow() {
+        val dedupe = LogDeduplicator(100)
+        val written = feed(dedupe, log("a", 0), log("a", 50), log("a", 150), log("a", 160))
+        // 窗口结束后的第一条日志先写入上一个窗口的摘要
+        assertEquals(listOf("a", "上一条日志重复了1次，首次：0，最后：50，内容：a", "a"), written)
+        val out = arrayListOf<WriteAction>()
+        dedupe.expire(Long.MAX_VALUE, out)
+        assertEquals("上一条日志重复了1次，首次：150，最后：160，内容：a", out.single().log)
+    }
+
+    @Test
+    fun tableStaysBounded() {
+        val dedupe = LogDeduplicator(1000, capacity = 4)
+        val out = arrayListOf<WriteAction>()
+        for (i in 0 until 1000) {
+            val w = log("msg-${i % 50}", i.toLong())
+            if (dedupe.accept(w, out)) out.add(w)
+        }
+        dedupe.expire(Long.MAX_VALUE, out)
+        // 冲突时旧记录被替换，重复次数不会丢失
+        val repeated = out.filter { it.log.startsWith("上一条") }
+            .sumOf { it.log.substringAfter("重复了").substringBefore("次").toInt() }
+        assertEquals(1000, out.count { !it.log.startsWith("上一条") } + repeated)
+    }
+
+    @Test
+    fun disabledByDefault() {
+        val dedupe = LogDeduplicator(0)
+        assertFalse(dedupe.isEnabled())
+        assertEquals(listOf("a", "a"), feed(dedupe, log("a", 0), log("a", 1)))
+    }
+}
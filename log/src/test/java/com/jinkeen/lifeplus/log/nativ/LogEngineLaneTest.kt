@@ -0,0 +1,125 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.locks.LockSupport
+import kotlin.concurrent.thread
+
+/**
+ * 优先通道的调度顺序与日志风暴下的写入延迟测试
+ */
+class LogEngineLaneTest {
+
+    private fun config(priorityTypes: IntArray, weight: Int = 8, policy: OverflowPolicy = OverflowPolicy.DROP_OLDEST) = LogConfig(
+        "cache", "log", ByteArray(16), ByteArray(16),
+        mQueueCapacity = 64 * 1024,
+        mOverflowPolicy = policy,
+        mBlockTimeout = 10_000,
+        mPriorityTypes = priorityTypes,
+        mPriorityWeight = weight
+    )
+
+    @Test
+    fun lanesAreServedByWeight() {
+        val order = arrayListOf<String>()
+        val engine = LogEngine("log_test_lanes", config(intArrayOf(500), weight = 2)) { b ->
+            b.forEach { order.add(if (it.action == Action.FLUSH) "F" else it.writeAction.log) }
+        }
+        repeat(4) { engine.write("n$it", 101) }
+        repeat(4) { engine.write("e$it", 500) }
+        engine.write("t0", 101)
+        engine.flush()
+        engine.start()
+        engine.quit(false)
+        assertTrue(engine.awaitTermination(1, TimeUnit.SECONDS))
+        // 控制事件最先，之后每2条优先日志穿插1条普通日志
+        assertEquals(listOf("F", "e0", "e1", "n0", "e2", "e3", "n1", "n2", "n3", "t0"), order)
+    }
+
+    @Test
+    fun pendingFlushRequestsCoalesce() {
+        val order = arrayListOf<String>()
+        val engine = LogEngine("log_test_flush_coalesce", config(intArrayOf())) { b ->
+            b.forEach { order.add(if (it.action == Action.FLUSH) "F" else it.writeAction.log) }
+        }
+        engine.write("a", 101)
+        // 超过控制通道容量的请求也都被接收，且不会挤掉其他事件
+        repeat(100) { assertTrue(engine.flush()) }
+        engine.start()
+        val deadline = System.currentTimeMillis() + 1000
+        while (order.size < 2 && System.currentTimeMillis() < deadline) Thread.sleep(1)
+        // 已处理的请求不再合并之后的请求
+        engine.write("b", 101)
+        assertTrue(engine.flush())
+        engine.quit(false)
+        assertTrue(engine.awaitTermination(1, TimeUnit.SECONDS))
+        assertEquals(listOf("F", "a"), order.subList(0, 2))
+        assertEquals(listOf("F", "b"), order.subList(2, 4).sorted())
+        assertEquals(0, engine.droppedCount())
+    }
+
+    @Test
+    fun throwableRecordsTakePriorityLane() {
+        val order = arrayListOf<String>()
+        val engine = LogEngine("log_test_lane_error", config(intArrayOf())) { b -> b.forEach { order.add(it.writeAction.log) } }
+        repeat(3) { engine.write("n$it", 101) }
+        engine.offer(engine.obtainWrite(101).apply { writeAction.log = "crash"; writeAction.defer(IllegalStateException()) })
+        engine.start()
+        engine.quit(false)
+        assertTrue(engine.awaitTermination(1, TimeUnit.SECONDS))
+        assertEquals("crash", order.first().substringBefore('\n'))
+    }
+
+    // 持续写入普通日志的同时每隔一段时间写入一条错误日志，返回错误日志从投递到被消费的p99延迟（微秒）。
+    // 使用阻塞策略使队列始终处于饱和状态且不丢失日志
+    private fun stormLatency(priorityTypes: IntArray): Long {
+        val errors = 200
+        val sent = LongArray(errors)
+        val latency = LongArray(errors)
+        var received = 0
+        val engine = LogEngine("log_bench_storm", config(priorityTypes, policy = OverflowPolicy.BLOCK)) { b ->
+            for (a in b) {
+                val log = a.writeAction.log
+                if (log.startsWith("err-")) {
+                    val i = log.substring(4).toInt()
+                    latency[i] = System.nanoTime() - sent[i]
+                    received++
+                }
+            }
+            // 模拟每个批次的磁盘写入耗时
+            LockSupport.parkNanos(500_000)
+        }
+        engine.start()
+        val isStorming = AtomicBoolean(true)
+        val storm = thread {
+            var i = 0
+            while (isStorming.get()) {
+                engine.write("verbose-${i++}", 101)
+                if (i % 64 == 0) Thread.yield()
+            }
+        }
+        Thread.sleep(50)
+        for (i in 0 until errors) {
+            sent[i] = System.nanoTime()
+            engine.write("err-$i", 500)
+            Thread.sleep(2)
+        }
+        isStorming.set(false)
+        storm.join()
+        engine.quit(false)
+        assertTrue(engine.awaitTermination(30, TimeUnit.SECONDS))
+        assertEquals(errors, received)
+        latency.sort()
+        return TimeUnit.NANOSECONDS.toMicros(latency[(errors * 0.99).toInt() - 1])
+    }
+
+    @Test
+    fun errorLatencyStaysFlatDuringStorm() {
+        val shared = stormLatency(intArrayOf())
+        val laned = stormLatency(intArrayOf(500))
+        println("日志风暴下错误日志的p99延迟：共用队列=${shared}us, 优先通道=${laned}us")
+        assertTrue("优先通道的延迟应低于共用队列：${laned}us / ${shared}us", laned < shared)
+    }
+}
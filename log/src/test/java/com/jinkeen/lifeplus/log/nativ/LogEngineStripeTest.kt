@@ -0,0 +1,84 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.concurrent.thread
+
+/**
+ * 分段队列的顺序性测试与多生产者吞吐量基准
+ */
+class LogEngineStripeTest {
+
+    private fun config(stripes: Int, capacity: Int = 64 * 1024) = LogConfig(
+        "cache", "log", ByteArray(16), ByteArray(16),
+        mQueueCapacity = capacity,
+        mQueueStripes = stripes,
+        mOverflowPolicy = OverflowPolicy.BLOCK,
+        mBlockTimeout = 1000
+    )
+
+    @Test
+    fun keepsPerThreadOrderAndBatchTimeOrder() {
+        val producers = 8
+        val perProducer = 20_000
+        val next = HashMap<Long, Int>()
+        var inversions = 0
+        val engine = LogEngine("log_test_stripe_order", config(4)) { batch ->
+            var last = Long.MIN_VALUE
+            for (a in batch) {
+                val w = a.writeAction
+                if (w.localTime < last) inversions++
+                last = w.localTime
+                val i = w.log.toInt()
+                assertEquals(next[w.threadId] ?: 0, i)
+                next[w.threadId] = i + 1
+            }
+        }
+        engine.start()
+        val workers = (0 until producers).map {
+            thread(start = true) { for (i in 0 until perProducer) assertTrue(engine.write(i.toString(), 101)) }
+        }
+        workers.forEach { it.join() }
+        engine.quit(false)
+        assertTrue(engine.awaitTermination(5, TimeUnit.SECONDS))
+        assertEquals(producers, next.size)
+        assertTrue(next.values.all { it == perProducer })
+        // 时间戳在投递前获取，同一分段内多个线程之间仍可能有少量先后颠倒
+        println("批次内时间先后颠倒的次数：$inversions")
+    }
+
+    @Test
+    fun multiProducerThroughput() {
+        val perThread = 400_000
+        for (threads in intArrayOf(1, 4, 16, 64)) {
+            val single = this.measure(threads, 1, perThread / threads)
+            val striped = this.measure(threads, minOf(threads, 8), perThread / threads)
+            println("生产线程数=$threads, 投递吞吐量：单队列=${single}条/秒, 分段队列=${striped}条/秒")
+        }
+    }
+
+    private fun measure(threads: Int, stripes: Int, perThread: Int): Long {
+        val consumed = AtomicLong()
+        // 队列容量足以容纳全部日志，只衡量生产线程一侧的投递开销。线程按ID分配到分段，分配不均时单个分段可能超过平均份额
+        val engine = LogEngine("log_bench_$threads-$stripes", config(stripes, 2 * threads * perThread)) { consumed.addAndGet(it.size.toLong()) }
+        engine.start()
+        val ready = CountDownLatch(1)
+        val workers = (0 until threads).map {
+            thread(start = true) {
+                ready.await()
+                for (i in 0 until perThread) engine.write("Log content", 101)
+            }
+        }
+        val begin = System.nanoTime()
+        ready.countDown()
+        workers.forEach { it.join() }
+        val cost = System.nanoTime() - begin
+        engine.quit(false)
+        assertTrue(engine.awaitTermination(10, TimeUnit.SECONDS))
+        assertEquals(threads * perThread.toLong(), consumed.get())
+        return threads * perThread * TimeUnit.SECONDS.toNanos(1) / cost
+    }
+}
@@ -0,0 +1,294 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.lang.management.ManagementFactory
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+
+/**
+ * 写入引擎的空闲开销与投递延迟测试
+ */
+class LogEngineTest {
+
+    private fun config(
+        batchCount: Int = 256,
+        batchBytes: Int = 64 * 1024,
+        capacity: Int = 8192,
+        policy: OverflowPolicy = OverflowPolicy.DROP_OLDEST,
+        priorityTypes: IntArray = intArrayOf()
+    ) = LogConfig(
+        "cache", "log", ByteArray(16), ByteArray(16),
+        mBatchCount = batchCount,
+        mBatchBytes = batchBytes,
+        mQueueCapacity = capacity,
+        mOverflowPolicy = policy,
+        mBlockTimeout = 20,
+        mPriorityTypes = priorityTypes
+    )
+
+    private fun newWrite(i: Int) = LogAction(Action.WRITE).apply {
+        writeAction = WriteAction("Log content-$i").apply { flag = 101 }
+    }
+
+    @Test
+    fun idleWriterDoesNotSpin() {
+        val engine = LogEngine("log_test_idle", config()) {}
+        engine.start()
+        Thread.sleep(100)
+        val mx = ManagementFactory.getThreadMXBean()
+        val id = engine.writer!!.id
+        val begin = mx.getThreadCpuTime(id)
+        Thread.sleep(500)
+        val cost = TimeUnit.NANOSECONDS.toMillis(mx.getThreadCpuTime(id) - begin)
+        println("空闲500ms内写入线程的CPU耗时：${cost}ms")
+        assertTrue("空闲的写入线程不应占用CPU：${cost}ms", cost < 50)
+        engine.quit(false)
+        assertTrue(engine.awaitTermination(1, TimeUnit.SECONDS))
+    }
+
+    @Test
+    fun drainsEverythingUnderContention() {
+        val producers = 8
+        val perProducer = 20_000
+        val consumed = AtomicInteger()
+        val engine = LogEngine("log_test_contention", config(policy = OverflowPolicy.BLOCK)) { consumed.addAndGet(it.size) }
+        engine.start()
+
+        val latencies = LongArray(producers * perProducer)
+        val ready = CountDownLatch(1)
+        val workers = (0 until producers).map { p ->
+            thread(start = true) {
+                ready.await()
+                for (i in 0 until perProducer) {
+                    val action = newWrite(i)
+                    val begin = System.nanoTime()
+                    engine.offer(action)
+                    latencies[p * perProducer + i] = System.nanoTime() - begin
+                }
+            }
+        }
+        ready.countDown()
+        workers.forEach { it.join() }
+        engine.quit(false)
+        assertTrue(engine.awaitTermination(5, TimeUnit.SECONDS))
+        assertEquals(producers * perProducer.toLong(), consumed.get() + engine.droppedCount())
+
+        latencies.sort()
+        val p50 = latencies[latencies.size / 2]
+        val p99 = latencies[latencies.size * 99 / 100]
+        println("投递延迟：p50=${p50}ns, p99=${p99}ns")
+    }
+
+    @Test
+    fun idleCallbackSchedulesWakeUp() {
+        val calls = AtomicInteger(0)
+        val quitCalls = AtomicInteger(0)
+        val deadline = System.currentTimeMillis() + 100
+        var wokeAt = 0L
+        val engine = LogEngine("log_test_idle_wake", config(), { isQuit ->
+            if (isQuit) quitCalls.incrementAndGet()
+            calls.incrementAndGet()
+            val now = System.currentTimeMillis()
+            // 第一次等待到期后不再需要唤醒
+            if (now < deadline) deadline - now else {
+                if (wokeAt == 0L) wokeAt = now
+                -1L
+            }
+        }) {}
+        engine.start()
+        Thread.sleep(300)
+        assertTrue("到期后应被唤醒", wokeAt >= deadline)
+        val settled = calls.get()
+        Thread.sleep(100)
+        assertEquals("不再需要唤醒时应一直挂起", settled, calls.get())
+        engine.quit(false)
+        assertTrue(engine.awaitTermination(1, TimeUnit.SECONDS))
+        assertEquals(1, quitCalls.get())
+    }
+
+    @Test
+    fun drainOnCallingThreadWithinDeadline() {
+        val logs = ArrayList<String>(10_000)
+        var drainedOn: Thread? = null
+        var quitIdle = 0
+        // 写入线程未启动，模拟其来不及处理的情况
+        val engine = LogEngine("log_test_drain", config(capacity = 16 * 1024), { isQuit -> if (isQuit) quitIdle++; -1L }) { b ->
+            drainedOn = Thread.currentThread()
+            b.forEach { logs.add(it.writeAction.log) }
+        }
+        repeat(10_000) { engine.write("Log content-$it", 101) }
+        val begin = System.nanoTime()
+        assertTrue(engine.drain(200, TimeUnit.MILLISECONDS))
+        val cost = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin)
+        println("崩溃时排空10000条日志耗时：${cost}ms")
+        assertTrue("排空耗时过长：${cost}ms", cost < 200)
+        assertEquals(10_000, logs.size)
+        assertEquals("Log content-0", logs.first())
+        assertEquals("Log content-9999", logs.last())
+        assertEquals(Thread.currentThread(), drainedOn)
+        assertEquals(1, quitIdle)
+    }
+
+    @Test
+    fun drainKeepsOrderWithRunningWriter() {
+        val logs = ArrayList<String>()
+        val engine = LogEngine("log_test_drain_order", config(batchCount = 16, capacity = 16 * 1024)) { b ->
+            b.forEach { logs.add(it.writeAction.log) }
+            Thread.sleep(1)
+        }
+        engine.start()
+        repeat(2000) { engine.write("$it", 101) }
+        assertTrue(engine.drain(5, TimeUnit.SECONDS))
+        assertEquals(2000, logs.size)
+        for (i in logs.indices) assertEquals(i.toString(), logs[i])
+        engine.quit(false)
+        assertTrue(engine.awaitTermination(1, TimeUnit.SECONDS))
+    }
+
+    @Test
+    fun quitDrainsQueueAndFlushes() {
+        val actions = arrayListOf<Action>()
+        val engine = LogEngine("log_test_quit", config()) { b -> b.forEach { actions.add(it.action) } }
+        engine.start()
+        repeat(1000) { engine.offer(newWrite(it)) }
+        engine.quit(true)
+        assertTrue(engine.awaitTermination(1, TimeUnit.SECONDS))
+        assertFalse(engine.offer(newWrite(0)))
+        assertEquals(1001, actions.size)
+        assertEquals(Action.FLUSH, actions.last())
+    }
+
+    @Test
+    fun offersRacingQuitAreConsumedOrRejected() {
+        repeat(20) {
+            val consumed = AtomicInteger()
+            val flushes = AtomicInteger()
+            val engine = LogEngine("log_test_quit_race", config()) { b ->
+                b.forEach { if (it.action == Action.FLUSH) flushes.incrementAndGet() else consumed.incrementAndGet() }
+            }
+            engine.start()
+            val accepted = AtomicInteger()
+            val start = CountDownLatch(1)
+            val producers = (0 until 4).map {
+                thread {
+                    start.await()
+                    repeat(2000) { if (engine.write("Log content-$it", 101)) accepted.incrementAndGet() }
+                }
+            }
+            // 同时停止多次，只追加一次强制写入
+            val quitters = (0 until 2).map {
+                thread {
+                    start.await()
+                    engine.quit(true)
+                }
+            }
+            start.countDown()
+            (producers + quitters).forEach { it.join() }
+            assertTrue(engine.awaitTermination(1, TimeUnit.SECONDS))
+            // 返回true的投递全部被消费，没有事件遗留在队列中
+            assertEquals(accepted.get(), consumed.get())
+            assertEquals(1, flushes.get())
+        }
+    }
+
+    @Test
+    fun drainsInBoundedBatches() {
+        val batches = arrayListOf<Int>()
+        val engine = LogEngine("log_test_batch", config(batchCount = 64, batchBytes = Int.MAX_VALUE)) { batches.add(it.size) }
+        repeat(1000) { engine.offer(newWrite(it)) }
+        engine.start()
+        engine.quit(false)
+        assertTrue(engine.awaitTermination(1, TimeUnit.SECONDS))
+        assertEquals(1000, batches.sum())
+        assertTrue(batches.all { it <= 64 })
+        assertEquals(16, batches.size)
+    }
+
+    @Test
+    fun batchBytesLimitSplitsLargeEntries() {
+        val batches = arrayListOf<Int>()
+        val engine = LogEngine("log_test_bytes", config(batchCount = 1024, batchBytes = 100)) { batches.add(it.size) }
+        repeat(10) { engine.offer(LogAction(Action.WRITE).apply { writeAction = WriteAction("x".repeat(60)) }) }
+        engine.start()
+        engine.quit(false)
+        assertTrue(engine.awaitTermination(1, TimeUnit.SECONDS))
+        assertEquals(listOf(2, 2, 2, 2, 2), batches)
+    }
+
+    // 启动写入线程并等待队列中已有的事件全部消费完成
+    private fun LogEngine.finish() {
+        start()
+        quit(false)
+        assertTrue(awaitTermination(1, TimeUnit.SECONDS))
+    }
+
+    private fun collector(logs: MutableList<String>): (List<LogAction>) -> Unit = { b -> b.forEach { logs.add(it.writeAction.log) } }
+
+    @Test
+    fun dropNewestKeepsEarliest() {
+        val logs = arrayListOf<String>()
+        val engine = LogEngine("log_test_newest", config(capacity = 8, policy = OverflowPolicy.DROP_NEWEST), consumer = collector(logs))
+        repeat(20) { engine.offer(newWrite(it)) }
+        engine.finish()
+        assertEquals(12, engine.rejectedCount())
+        assertEquals((0 until 8).map { "Log content-$it" }, logs)
+    }
+
+    @Test
+    fun dropOldestKeepsLatest() {
+        val logs = arrayListOf<String>()
+        val engine = LogEngine("log_test_oldest", config(capacity = 8, policy = OverflowPolicy.DROP_OLDEST), consumer = collector(logs))
+        repeat(20) { engine.offer(newWrite(it)) }
+        engine.finish()
+        assertEquals(12, engine.evictedCount())
+        assertEquals((12 until 20).map { "Log content-$it" }, logs)
+    }
+
+    @Test
+    fun blockTimesOutWhenWriterIsStalled() {
+        val engine = LogEngine("log_test_block", config(capacity = 4, policy = OverflowPolicy.BLOCK)) {}
+        repeat(4) { assertTrue(engine.offer(newWrite(it))) }
+        val begin = System.nanoTime()
+        assertFalse(engine.offer(newWrite(4)))
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) >= 20)
+        assertEquals(1, engine.droppedCount())
+    }
+
+    @Test
+    fun dropByPriorityReservesRoomForPriorityTypes() {
+        val logs = arrayListOf<String>()
+        val config = config(capacity = 8, policy = OverflowPolicy.DROP_BY_PRIORITY, priorityTypes = intArrayOf(500))
+        val engine = LogEngine("log_test_priority", config, consumer = collector(logs))
+        repeat(10) { engine.offer(newWrite(it)) }
+        assertEquals(4, engine.rejectedCount())
+        repeat(4) { engine.offer(LogAction(Action.WRITE).apply { writeAction = WriteAction("error-$it").apply { flag = 500 } }) }
+        engine.finish()
+        // 优先类型进入独立的通道，不再挤占普通日志，且先于积压的普通日志写入
+        assertEquals(4, engine.rejectedCount())
+        assertEquals(0, engine.evictedCount())
+        assertEquals(10, logs.size)
+        assertEquals((0 until 4).map { "error-$it" }, logs.take(4))
+    }
+
+    @Test
+    fun steadyStateWriteDoesNotAllocate() {
+        val mx = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        val engine = LogEngine("log_test_alloc", config(capacity = 1024)) {}
+        engine.start()
+        val log = "Log content"
+        // 预热：填满回收池并完成JIT编译
+        repeat(200_000) { engine.write(log, 101) }
+        val id = Thread.currentThread().id
+        val times = 100_000
+        val begin = mx.getThreadAllocatedBytes(id)
+        for (i in 0 until times) engine.write(log, 101)
+        val allocated = mx.getThreadAllocatedBytes(id) - begin
+        println("稳定状态下${times}次写入共分配${allocated}字节")
+        assertTrue("稳定状态下写入不应分配对象：${allocated}字节", allocated < times / 10)
+        engine.quit(false)
+        assertTrue(engine.awaitTermination(1, TimeUnit.SECONDS))
+    }
+}
@@ -0,0 +1,75 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import com.jinkeen.lifeplus.log.LogSupplier
+import org.junit.Assert.*
+import org.junit.Test
+import java.lang.management.ManagementFactory
+import java.util.concurrent.TimeUnit
+
+class LogFormatterTest {
+
+    private val builder = StringBuilder()
+    private val renderer = StackTraceRenderer(64, 8)
+
+    private fun resolve(w: WriteAction): String {
+        assertTrue(w.resolve(builder, renderer))
+        return w.log
+    }
+
+    @Test
+    fun replacesPlaceholdersInOrder() {
+        assertEquals("用户tom耗时25ms", resolve(WriteAction().defer("用户{}耗时{}ms").arg("tom").arg(25L)))
+        assertEquals("1 + 2 = 3", resolve(WriteAction().defer("{} + {} = {}", arrayOf(1, 2, 3))))
+        assertEquals("null and [a, b]", resolve(WriteAction().defer("{} and {}").arg(null).arg(arrayOf("a", "b"))))
+    }
+
+    @Test
+    fun keepsUnmatchedAndEscapedPlaceholders() {
+        assertEquals("a {}", resolve(WriteAction().defer("{} {}").arg("a")))
+        assertEquals("{} a", resolve(WriteAction().defer("\\{} {}").arg("a")))
+        assertEquals("only", resolve(WriteAction().defer("only").arg(1L).arg(2L)))
+    }
+
+    @Test
+    fun supplierRunsOnResolve() {
+        var called = 0
+        val w = WriteAction().defer(LogSupplier { called++; "lazy" })
+        assertEquals(0, called)
+        assertEquals("lazy", resolve(w))
+        assertEquals(1, called)
+        assertFalse(WriteAction().defer(LogSupplier { "" }).resolve(builder, renderer))
+    }
+
+    @Test
+    fun formattingFailureIsRecorded() {
+        val bad = object : Any() {
+            override fun toString(): String = throw IllegalStateException("boom")
+        }
+        assertTrue(resolve(WriteAction().defer("x={}").arg(bad)).contains("boom"))
+    }
+
+    @Test
+    fun recycledRecordForgetsDeferredState() {
+        val w = WriteAction().defer("{} {}").arg("a").arg(1L)
+        w.reset()
+        w.log = "plain"
+        assertEquals("plain", resolve(w))
+    }
+
+    @Test
+    fun deferredWriteDoesNotAllocateOnCaller() {
+        val mx = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        val engine = LogEngine("log_test_deferred", LogConfig("cache", "log", ByteArray(16), ByteArray(16), mQueueCapacity = 1024)) {}
+        engine.start()
+        val user = "tom"
+        repeat(200_000) { engine.offer(engine.obtainWrite(101).apply { writeAction.defer("用户{}耗时{}ms").arg(user).arg(it.toLong()) }) }
+        val id = Thread.currentThread().id
+        val begin = mx.getThreadAllocatedBytes(id)
+        for (i in 0 until 100_000) engine.offer(engine.obtainWrite(101).apply { writeAction.defer("用户{}耗时{}ms").arg(user).arg(i.toLong()) })
+        val allocated = mx.getThreadAllocatedBytes(id) - begin
+        println("稳定状态下100000次延迟格式化写入共分配${allocated}字节")
+        assertTrue(allocated < 10_000)
+        engine.quit(false)
+        assertTrue(engine.awaitTermination(1, TimeUnit.SECONDS))
+    }
+}
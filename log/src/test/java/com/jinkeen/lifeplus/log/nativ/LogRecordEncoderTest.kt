@@ -0,0 +1,137 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.nio.ByteBuffer
+
+class LogRecordEncoderTest {
+
+    private class Decoded(val flag: Int, val time: Long, val threadId: Long, val isMain: Boolean, val threadName: String, val log: String)
+
+    // 与底层约定的解码过程，字典跨批次保留
+    private class Decoder {
+        val names = HashMap<Int, String>()
+        var definitions = 0
+        var resets = 0
+
+        fun decode(buffer: ByteBuffer, length: Int): List<Decoded> {
+            val b = buffer.duplicate().order(buffer.order())
+            b.position(0).limit(length)
+            val out = ArrayList<Decoded>()
+            while (b.hasRemaining()) {
+                when (b.get()) {
+                    LogRecordEncoder.TAG_RESET -> {
+                        names.clear()
+                        resets++
+                    }
+                    LogRecordEncoder.TAG_THREAD_NAME -> {
+                        val id = b.short.toInt()
+                        names[id] = string(b, b.short.toInt())
+                        definitions++
+                    }
+                    LogRecordEncoder.TAG_RECORD -> {
+                        val flag = b.int
+                        val time = b.long
+                        val threadId = b.long
+                        val isMain = b.get().toInt() == 1
+                        val name = names[b.short.toInt()]!!
+                        out.add(Decoded(flag, time, threadId, isMain, name, string(b, b.int)))
+                    }
+                    else -> fail("未知的标识")
+                }
+            }
+            return out
+        }
+
+        private fun string(b: ByteBuffer, length: Int): String = ByteArray(length).also { b.get(it) }.toString(Charsets.UTF_8)
+    }
+
+    private fun record(log: String, name: String = "main", flag: Int = 1): WriteAction = WriteAction(log).apply {
+        this.flag = flag
+        localTime = 1_700_000_000_000L
+        threadId = 7L
+        threadName = name
+        isMainThread = name == "main"
+    }
+
+    @Test
+    fun fieldsRoundTrip() {
+        val encoder = LogRecordEncoder(1024)
+        val logs = listOf("plain ascii", "中文日志内容", "emoji 😀 in log", "é ß ñ", "")
+        logs.forEach { assertTrue(encoder.encode(record(it, flag = it.length))) }
+        val decoded = Decoder().decode(encoder.buffer, encoder.length())
+        assertEquals(logs.size, decoded.size)
+        for (i in logs.indices) {
+            val d = decoded[i]
+            assertEquals(logs[i], d.log)
+            assertArrayEquals(logs[i].toByteArray(Charsets.UTF_8), d.log.toByteArray(Charsets.UTF_8))
+            assertEquals(logs[i].length, d.flag)
+            assertEquals(1_700_000_000_000L, d.time)
+            assertEquals(7L, d.threadId)
+            assertTrue(d.isMain)
+            assertEquals("main", d.threadName)
+        }
+    }
+
+    @Test
+    fun threadNamesAreDefinedOnce() {
+        val encoder = LogRecordEncoder(4096)
+        val decoder = Decoder()
+        repeat(2) {
+            encoder.reset()
+            for (i in 0 until 10) encoder.encode(record("log$i", "worker-${i % 3}"))
+            val decoded = decoder.decode(encoder.buffer, encoder.length())
+            for (i in 0 until 10) assertEquals("worker-${i % 3}", decoded[i].threadName)
+        }
+        assertEquals(3, decoder.definitions)
+        assertEquals(1, decoder.resets)
+
+        encoder.resetDictionary()
+        encoder.reset()
+        encoder.encode(record("again", "worker-0"))
+        assertEquals("worker-0", decoder.decode(encoder.buffer, encoder.length())[0].threadName)
+        assertEquals(2, decoder.resets)
+        assertEquals(4, decoder.definitions)
+    }
+
+    @Test
+    fun fullBufferRejectsUntilReset() {
+        val encoder = LogRecordEncoder(128)
+        val log = "x".repeat(30)
+        var accepted = 0
+        while (encoder.encode(record(log))) accepted++
+        assertTrue(accepted > 0)
+        assertEquals(accepted, encoder.count())
+        encoder.reset()
+        assertTrue(encoder.encode(record(log)))
+    }
+
+    @Test
+    fun emptyBufferGrowsForLargeRecord() {
+        val encoder = LogRecordEncoder(16)
+        val log = "大".repeat(10_000)
+        assertTrue(encoder.encode(record(log)))
+        assertEquals(log, Decoder().decode(encoder.buffer, encoder.length())[0].log)
+    }
+
+    @Test
+    fun encodeThroughput() {
+        val records = (0 until 1024).map { record("用户操作日志 user action #$it with some payload 数据", "worker-${it % 8}") }
+        val bytes = records.sumOf { it.log.toByteArray(Charsets.UTF_8).size }.toLong()
+        val rounds = 500
+        val encoder = LogRecordEncoder(256 * 1024)
+        repeat(50) { encoder.reset(); records.forEach { encoder.encode(it) } }
+        var start = System.nanoTime()
+        repeat(rounds) { encoder.reset(); records.forEach { encoder.encode(it) } }
+        val encoded = System.nanoTime() - start
+
+        var sink = 0
+        repeat(50) { records.forEach { sink += it.log.toByteArray(Charsets.UTF_8).size + it.threadName.toByteArray(Charsets.UTF_8).size } }
+        start = System.nanoTime()
+        repeat(rounds) { records.forEach { sink += it.log.toByteArray(Charsets.UTF_8).size + it.threadName.toByteArray(Charsets.UTF_8).size } }
+        val converted = System.nanoTime() - start
+
+        val mb = bytes * rounds / 1024.0 / 1024.0
+        println("编码器：%.1f MB/s，逐条转换：%.1f MB/s（%d）".format(mb / (encoded / 1e9), mb / (converted / 1e9), sink))
+    }
+}
@@ -0,0 +1,60 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import kotlin.concurrent.thread
+
+class LogRingBufferTest {
+
+    private fun newWrite(producer: Int, i: Int) = LogAction(Action.WRITE).apply {
+        writeAction = WriteAction("$producer:$i").apply { flag = producer }
+    }
+
+    @Test
+    fun capacityIsRoundedToPowerOfTwo() {
+        assertEquals(2, LogRingBuffer(1).capacity)
+        assertEquals(8, LogRingBuffer(8).capacity)
+        assertEquals(16, LogRingBuffer(9).capacity)
+    }
+
+    @Test
+    fun rejectsWhenFullAndRecoversAfterPoll() {
+        val ring = LogRingBuffer(4)
+        repeat(4) { assertTrue(ring.offer(newWrite(0, it))) }
+        assertFalse(ring.offer(newWrite(0, 4)))
+        assertEquals(4, ring.size())
+        assertEquals("0:0", ring.poll()!!.writeAction.log)
+        assertTrue(ring.offer(newWrite(0, 4)))
+        val rest = generateSequence { ring.poll() }.map { it.writeAction.log }.toList()
+        assertEquals(listOf("0:1", "0:2", "0:3", "0:4"), rest)
+        assertTrue(ring.isEmpty())
+        assertNull(ring.poll())
+    }
+
+    @Test
+    fun multipleProducersKeepPerProducerOrder() {
+        val producers = 4
+        val perProducer = 50_000
+        val ring = LogRingBuffer(1024)
+        val ready = CountDownLatch(1)
+        val workers = (0 until producers).map { p ->
+            thread(start = true) {
+                ready.await()
+                for (i in 0 until perProducer) while (!ring.offer(newWrite(p, i))) Thread.yield()
+            }
+        }
+        ready.countDown()
+        val next = IntArray(producers)
+        var received = 0
+        while (received < producers * perProducer) {
+            val w = ring.poll()?.writeAction ?: continue
+            val i = w.log.substringAfter(':').toInt()
+            assertEquals(next[w.flag], i)
+            next[w.flag]++
+            received++
+        }
+        workers.forEach { it.join() }
+        assertTrue(ring.isEmpty())
+    }
+}
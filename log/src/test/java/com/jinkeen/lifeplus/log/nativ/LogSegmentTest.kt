@@ -0,0 +1,58 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import com.jinkeen.lifeplus.log.util.escapeTimemillis
+import com.jinkeen.lifeplus.log.util.nextDayTimemillis
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+import java.util.*
+
+class LogSegmentTest {
+
+    @Test
+    fun parsesLegacyAndSegmentNames() {
+        val legacy = LogSegment.parse(File("1640275200000"))!!
+        assertEquals(1640275200000L, legacy.day)
+        assertEquals(0, legacy.seq)
+        val segment = LogSegment.parse(File("1640275200000-12"))!!
+        assertEquals(1640275200000L, segment.day)
+        assertEquals(12, segment.seq)
+        assertNull(LogSegment.parse(File("1640275200000-")))
+        assertNull(LogSegment.parse(File("164027520000")))
+        assertNull(LogSegment.parse(File("1640275200000.meta")))
+        assertEquals("1640275200000", LogSegment.name(1640275200000L, 0))
+        assertEquals("1640275200000-3", LogSegment.name(1640275200000L, 3))
+    }
+
+    @Test
+    fun listsByDayThenSequence() {
+        val dir = Files.createTempDirectory("log_segment").toFile()
+        try {
+            listOf("1640361600000", "1640275200000-10", "1640275200000-2", "1640275200000", "other").forEach {
+                File(dir, it).writeText(it)
+            }
+            assertEquals(
+                listOf("1640275200000", "1640275200000-2", "1640275200000-10", "1640361600000"),
+                LogSegment.list(dir).map { it.file.name }
+            )
+        } finally {
+            dir.deleteRecursively()
+        }
+    }
+
+    @Test
+    fun dayBoundaries() {
+        val now = System.currentTimeMillis()
+        val day = escapeTimemillis(now)
+        val next = nextDayTimemillis(now)
+        assertTrue(day <= now && now < next)
+        Calendar.getInstance().apply {
+            timeInMillis = next
+            assertEquals(0, get(Calendar.HOUR_OF_DAY))
+            assertEquals(0, get(Calendar.MINUTE))
+        }
+        assertEquals(next, nextDayTimemillis(next - 1))
+        assertEquals(next, escapeTimemillis(next + 1))
+    }
+}
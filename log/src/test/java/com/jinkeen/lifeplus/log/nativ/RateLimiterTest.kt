@@ -0,0 +1,70 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class RateLimiterTest {
+
+    private val second = TimeUnit.SECONDS.toNanos(1)
+
+    private fun acquired(limiter: RateLimiter, type: Int, times: Int, now: Long) = (0 until times).count { limiter.tryAcquire(type, now) }
+
+    @Test
+    fun unconfiguredTypesAreNotLimited() {
+        val limiter = RateLimiter(mapOf(101 to 10))
+        assertFalse(RateLimiter().isEnabled())
+        assertEquals(1000, acquired(limiter, 102, 1000, 0L))
+    }
+
+    @Test
+    fun burstIsBoundedAndRefills() {
+        val limiter = RateLimiter(mapOf(101 to 10))
+        assertEquals(10, acquired(limiter, 101, 100, 0L))
+        // 每100毫秒补充一个令牌
+        assertEquals(1, acquired(limiter, 101, 100, second / 10))
+        // 长时间空闲后最多积累1秒的令牌
+        assertEquals(10, acquired(limiter, 101, 100, 60 * second))
+    }
+
+    @Test
+    fun suppressedCountsAreDrainedOnce() {
+        val limiter = RateLimiter(mapOf(101 to 5, 102 to 1))
+        acquired(limiter, 101, 20, 0L)
+        acquired(limiter, 102, 3, 0L)
+        val counts = hashMapOf<Int, Long>()
+        limiter.drainSuppressed { type, count -> counts[type] = count }
+        assertEquals(mapOf(101 to 15L, 102 to 2L), counts)
+        limiter.drainSuppressed { _, _ -> fail("抑制数量应已清零") }
+    }
+
+    @Test
+    fun sampleRateKeepsApproximateShare() {
+        val limiter = RateLimiter(sampleRates = mapOf(101 to 0.25F))
+        val kept = acquired(limiter, 101, 100_000, 0L)
+        assertTrue("采样保留数量：$kept", kept in 23_000..27_000)
+    }
+
+    @Test
+    fun limitsChangeAtRuntime() {
+        val limiter = RateLimiter()
+        assertEquals(100, acquired(limiter, 101, 100, 0L))
+        limiter.setRate(101, 2)
+        assertTrue(limiter.isEnabled())
+        assertEquals(2, acquired(limiter, 101, 100, second))
+        limiter.setRate(101, 0)
+        assertEquals(100, acquired(limiter, 101, 100, second))
+        limiter.setSampleRate(101, 0F)
+        assertEquals(0, acquired(limiter, 101, 100, second))
+    }
+
+    @Test
+    fun concurrentCallersShareOneBucket() {
+        val limiter = RateLimiter(mapOf(101 to 1000))
+        val passed = java.util.concurrent.atomic.AtomicInteger()
+        val threads = (0 until 4).map { Thread { repeat(10_000) { if (limiter.tryAcquire(101, 0L)) passed.incrementAndGet() } } }
+        threads.forEach { it.start() }
+        threads.forEach { it.join() }
+        assertEquals(1000, passed.get())
+    }
+}
@@ -0,0 +1,106 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import com.jinkeen.lifeplus.log.util.escapeTimemillis
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+
+class RetentionJanitorTest {
+
+    private val dir: File = Files.createTempDirectory("log_janitor").toFile()
+    private val now = System.currentTimeMillis()
+    private val today = escapeTimemillis(now)
+
+    @After
+    fun clean() {
+        dir.deleteRecursively()
+    }
+
+    private fun config(saveDays: Int = 7, maxDir: Long = 0L, tiers: Map<Int, Long> = emptyMap()) = LogConfig(
+        "cache", dir.absolutePath, ByteArray(16), ByteArray(16),
+        saveDays = saveDays * LogConfig.DAY,
+        mMaxDirSize = maxDir,
+        mRetentionTiers = tiers
+    )
+
+    private fun segment(daysAgo: Int, seq: Int = 0, size: Int = 100, types: String? = null): String {
+        val name = LogSegment.name(today - daysAgo * LogConfig.DAY, seq)
+        File(dir, name).writeBytes(ByteArray(size))
+        types?.let { File(dir, "$name.types").writeText(it) }
+        return name
+    }
+
+    private fun names(): Set<String> = dir.list()!!.toSet()
+
+    @Test
+    fun deletesSegmentsPastSaveDays() {
+        val old = segment(8)
+        val oldSeq = segment(8, 1)
+        val edge = segment(7)
+        val recent = segment(1)
+        // 索引文件随分段一起删除
+        File(dir, "$old.idx").writeBytes(ByteArray(4))
+        assertEquals(3, RetentionJanitor(config()).run(now))
+        assertEquals(setOf(recent), names())
+        assertFalse(names().contains(old) || names().contains(oldSeq) || names().contains(edge))
+    }
+
+    @Test
+    fun tieredTypesAreKeptLonger() {
+        val verbose = segment(10, types = "101,102")
+        val error = segment(10, 1, types = "101,500")
+        val untracked = segment(10, 2)
+        val expired = segment(40, types = "500")
+        RetentionJanitor(config(tiers = mapOf(500 to 30 * LogConfig.DAY))).run(now)
+        assertEquals(setOf(error, "$error.types"), names())
+        assertFalse(names().contains(verbose) || names().contains(untracked) || names().contains(expired))
+    }
+
+    @Test
+    fun totalSizeEvictsOldestVerboseFirst() {
+        val tiers = mapOf(500 to 30 * LogConfig.DAY)
+        val oldError = segment(3, size = 400, types = "500")
+        val oldVerbose = segment(2, size = 400, types = "101")
+        val newVerbose = segment(1, size = 400, types = "101")
+        val active = segment(0, size = 400, types = "101")
+        val janitor = RetentionJanitor(config(maxDir = 1200, tiers = tiers))
+        janitor.activate(active)
+        janitor.run(now)
+        // 删除到1200的80%以下：最早的错误日志分段被保留，先删除普通类型的分段
+        val left = names()
+        assertFalse(left.contains(oldVerbose))
+        assertFalse(left.contains(newVerbose))
+        assertTrue(left.contains(oldError))
+        assertTrue(left.contains(active))
+
+        // 仍然超过时才删除错误日志分段，正在写入的分段始终保留
+        File(dir, active).writeBytes(ByteArray(1000))
+        janitor.run(now)
+        assertFalse(names().contains(oldError))
+        assertTrue(names().contains(active))
+    }
+
+    @Test
+    fun totalSizeStopsAtLowWater() {
+        val a = segment(3, size = 300)
+        val b = segment(2, size = 300)
+        val c = segment(1, size = 300)
+        var evicted = 0
+        RetentionJanitor(config(maxDir = 1000)) { evicted++ }.run(now)
+        assertEquals(setOf(b, c), names())
+        assertFalse(names().contains(a))
+        assertEquals(1, evicted)
+    }
+
+    @Test
+    fun pendingTypesAreWrittenByJanitor() {
+        val name = segment(0)
+        val janitor = RetentionJanitor(config())
+        janitor.markTypes(name, intArrayOf(101, 500))
+        assertFalse(File(dir, "$name.types").exists())
+        janitor.run(now)
+        assertEquals("101,500", File(dir, "$name.types").readText())
+    }
+}
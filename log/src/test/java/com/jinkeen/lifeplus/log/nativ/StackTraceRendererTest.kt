@@ -0,0 +1,82 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import org.junit.Assert.*
+import org.junit.Test
+
+class StackTraceRendererTest {
+
+    private fun frames(vararg methods: String) = methods.map { StackTraceElement("com.example.Foo", it, "Foo.java", it.length) }.toTypedArray()
+
+    private fun newThrowable(): Throwable {
+        val cause = IllegalStateException("inner").apply { stackTrace = frames("c", "b", "main") }
+        return RuntimeException("outer", cause).apply { stackTrace = frames("a", "b", "main") }
+    }
+
+    @Test
+    fun rendersLikePrintStackTraceWithoutTabs() {
+        val text = StackTraceRenderer(64, 8).render(newThrowable())
+        assertEquals(
+            """
+            java.lang.RuntimeException: outer
+            at com.example.Foo.a(Foo.java:1)
+            at com.example.Foo.b(Foo.java:1)
+            at com.example.Foo.main(Foo.java:4)
+            Caused by: java.lang.IllegalStateException: inner
+            at com.example.Foo.c(Foo.java:1)
+            ... 2 more
+            """.trimIndent(), text
+        )
+    }
+
+    @Test
+    fun appliesFrameAndCauseLimits() {
+        var tr: Throwable = Exception("0").apply { stackTrace = frames("a", "b", "c", "d") }
+        for (i in 1..5) tr = Exception("$i", tr).apply { stackTrace = frames("x$i", "y$i", "z$i") }
+        val text = StackTraceRenderer(2, 1).render(tr)
+        val lines = text.split('\n')
+        assertEquals("java.lang.Exception: 5", lines[0])
+        assertEquals("... 1 frames omitted", lines[3])
+        assertEquals("Caused by: java.lang.Exception: 4", lines[4])
+        assertEquals("... causes omitted", lines.last())
+        assertFalse(text.contains("Exception: 3"))
+    }
+
+    @Test
+    fun repeatedThrowablesHitTheCache() {
+        val renderer = StackTraceRenderer(64, 8)
+        val first = renderer.render(newThrowable())
+        val second = renderer.render(newThrowable())
+        assertSame(first, second)
+        assertEquals(1, renderer.hits)
+        val other = renderer.render(IllegalStateException("other").apply { stackTrace = frames("a") })
+        assertNotEquals(first, other)
+        assertEquals(1, renderer.hits)
+    }
+
+    @Test
+    fun collidingFingerprintsAreNotConfused() {
+        val renderer = StackTraceRenderer(64, 8)
+        // "Aa"与"BB"的hashCode相同
+        val a = renderer.render(Exception("Aa").apply { stackTrace = frames("run") })
+        val b = renderer.render(Exception("BB").apply { stackTrace = frames("run") })
+        assertTrue(a.startsWith("java.lang.Exception: Aa"))
+        assertTrue(b.startsWith("java.lang.Exception: BB"))
+        assertEquals(0, renderer.hits)
+        assertTrue(renderer.render(Exception("Aa").apply { stackTrace = frames("run") }).startsWith("java.lang.Exception: Aa"))
+    }
+
+    @Test
+    fun cyclicCausesTerminate() {
+        val a = Exception("a")
+        val b = Exception("b", a)
+        a.initCause(b)
+        assertTrue(StackTraceRenderer(4, 8).render(a).contains("Caused by: java.lang.Exception: b"))
+    }
+
+    @Test
+    fun throwableIsRenderedOnResolve() {
+        val w = WriteAction("出错了").defer(newThrowable())
+        assertTrue(w.resolve(StringBuilder(), StackTraceRenderer(64, 8)))
+        assertTrue(w.log.startsWith("出错了\njava.lang.RuntimeException: outer\nat com.example.Foo.a"))
+    }
+}
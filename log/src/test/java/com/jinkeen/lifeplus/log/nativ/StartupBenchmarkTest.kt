@@ -0,0 +1,49 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import com.jinkeen.lifeplus.log.JKLog
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * 冷启动开销：初始化占用调用线程的时间，以及第一条日志被写入线程接收的时间
+ */
+class StartupBenchmarkTest {
+
+    private val dir: File = Files.createTempDirectory("log_startup").toFile()
+
+    @After
+    fun clean() {
+        dir.deleteRecursively()
+    }
+
+    private fun micros(nanos: Long) = nanos / 1000
+
+    @Test
+    fun initCostAndTimeToFirstLog() {
+        val accepted = CountDownLatch(1)
+        var acceptedAt = 0L
+        var acceptedBy = ""
+
+        val begin = System.nanoTime()
+        JKLog.init(LogConfig(File(dir, "cache").absolutePath, File(dir, "log").absolutePath, ByteArray(16), ByteArray(16)))
+        val init = System.nanoTime() - begin
+        // 内容在写入线程中生成，此时底层库已装载、日志协议已初始化
+        JKLog.w(101) {
+            acceptedAt = System.nanoTime()
+            acceptedBy = Thread.currentThread().name
+            accepted.countDown()
+            "first"
+        }
+        assertTrue(accepted.await(10, TimeUnit.SECONDS))
+        JKLog.quit(false)
+
+        val firstLog = acceptedAt - begin
+        println("冷启动：初始化占用调用线程=${micros(init)}us, 第一条日志被写入线程接收=${micros(firstLog)}us, 其中在写入线程中装载与初始化=${micros(firstLog - init)}us")
+        assertEquals("log_native_write", acceptedBy)
+    }
+}
@@ -0,0 +1,122 @@
+package com.jinkeen.lifeplus.log.nativ
+
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+
+class StorageMonitorTest {
+
+    private var free = 100 * LogConfig.M
+    private var dir = 0L
+
+    private val root: File = Files.createTempDirectory("log_storage").toFile()
+    private val logDir = File(root, "log")
+
+    @After
+    fun clean() {
+        root.deleteRecursively()
+    }
+
+    private fun monitor(minFree: Long = 50 * LogConfig.M, maxDir: Long = 0L) = StorageMonitor(
+        LogConfig("cache", logDir.path, ByteArray(16), ByteArray(16), mMinSDCard = minFree, mMaxDirSize = maxDir),
+        { if (File(it).isDirectory) free else throw IllegalArgumentException(it) },
+        { dir }
+    )
+
+    @Test
+    fun accountedBytesCloseGateWithoutPolling() {
+        val monitor = monitor()
+        monitor.poll()
+        assertTrue(monitor.isWritable())
+        monitor.account(30 * LogConfig.M)
+        assertTrue(monitor.isWritable())
+        monitor.account(20 * LogConfig.M)
+        assertFalse(monitor.isWritable())
+
+        // 空间被释放后，下一次检查重新打开
+        free = 200 * LogConfig.M
+        monitor.poll()
+        assertTrue(monitor.isWritable())
+    }
+
+    @Test
+    fun pollResetsAccountedBytes() {
+        val monitor = monitor()
+        monitor.poll()
+        monitor.account(40 * LogConfig.M)
+        free = 60 * LogConfig.M
+        monitor.poll()
+        assertTrue(monitor.isWritable())
+        monitor.account(10 * LogConfig.M)
+        assertFalse(monitor.isWritable())
+    }
+
+    @Test
+    fun directoryQuota() {
+        free = 10_000 * LogConfig.M
+        dir = 90 * LogConfig.M
+        val monitor = monitor(maxDir = 100 * LogConfig.M)
+        monitor.poll()
+        assertTrue(monitor.isWritable())
+        monitor.account(10 * LogConfig.M)
+        assertFalse(monitor.isWritable())
+        dir = 20 * LogConfig.M
+        monitor.poll()
+        assertTrue(monitor.isWritable())
+    }
+
+    @Test
+    fun firstPollCreatesMissingDirectory() {
+        val monitor = monitor()
+        monitor.poll()
+        assertTrue(logDir.isDirectory)
+        assertTrue(monitor.isWritable())
+    }
+
+    @Test
+    fun unknownFreeSpaceKeepsLastState() {
+        val monitor = monitor()
+        free = 0L
+        assertEquals(StorageMonitor.MIN_INTERVAL, monitor.poll())
+        assertTrue(monitor.isWritable())
+
+        free = 10 * LogConfig.M
+        monitor.poll()
+        assertFalse(monitor.isWritable())
+        free = 0L
+        monitor.poll()
+        assertFalse(monitor.isWritable())
+    }
+
+    @Test
+    fun intervalShrinksAsSpaceGetsTight() {
+        val monitor = monitor()
+        free = 10_000 * LogConfig.M
+        val relaxed = monitor.poll()
+        free = 60 * LogConfig.M
+        val tight = monitor.poll()
+        free = 40 * LogConfig.M
+        val full = monitor.poll()
+        assertEquals(StorageMonitor.MAX_INTERVAL, relaxed)
+        assertTrue(tight in StorageMonitor.MIN_INTERVAL until relaxed)
+        assertEquals(StorageMonitor.MIN_INTERVAL, full)
+        assertFalse(monitor.isWritable())
+    }
+
+    @Test
+    fun backgroundPollStartsImmediately() {
+        free = 10 * LogConfig.M
+        val monitor = monitor()
+        assertTrue(monitor.isWritable())
+        monitor.start()
+        try {
+            val deadline = System.currentTimeMillis() + 2000
+            while (monitor.isWritable() && System.currentTimeMillis() < deadline) Thread.sleep(5)
+            assertFalse(monitor.isWritable())
+        } finally {
+            monitor.stop()
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.jinkeen.lifeplus.log.parser
+
+import com.jinkeen.lifeplus.log.nativ.FileWorker
+import com.jinkeen.lifeplus.log.nativ.LogConfig
+import com.jinkeen.lifeplus.log.nativ.LogIndexWriter
+import com.jinkeen.lifeplus.log.nativ.LogProtocol
+import com.jinkeen.lifeplus.log.nativ.LogSegment
+import com.jinkeen.lifeplus.log.nativ.SealMark
+import com.jinkeen.lifeplus.log.nativ.WriteAction
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+
+class LogIndexTest {
+
+    // 与测试资源secure.properties中的密钥相同
+    private val key = "0123456789012345"
+
+    private val root: File = Files.createTempDirectory("log_index").toFile()
+    private val file = File(root, "log/1640275200000").apply { parentFile!!.mkdirs() }
+
+    @After
+    fun clean() {
+        root.deleteRecursively()
+    }
+
+    @Test
+    fun rangesSkipNonMatchingEntriesAndKeepGaps() {
+        file.writeBytes(ByteArray(1000))
+        val sidecar = LogIndex.sidecar(file)
+        LogIndex.append(sidecar, 100, 300, 10, 19, 5, LogIndex.typeBit(101))
+        LogIndex.append(sidecar, 300, 500, 20, 29, 5, LogIndex.typeBit(102))
+        LogIndex.append(sidecar, 500, 700, 30, 39, 5, LogIndex.typeBit(101) or LogIndex.typeBit(103))
+        val index = LogIndex.read(file)!!
+        assertEquals(3, index.size())
+        // 未覆盖的开头与结尾总是读取，相连的内容合并
+        assertEquals(listOf(0, 300, 500, 1000), index.ranges(1000, 0, 100, intArrayOf(101)).toList())
+        assertEquals(listOf(0, 100, 300, 500, 700, 1000), index.ranges(1000, 20, 29, intArrayOf()).toList())
+        assertEquals(listOf(0, 100, 700, 1000), index.ranges(1000, 40, 50, intArrayOf()).toList())
+        // 超出文件大小的索引不可信，之后的内容全部读取
+        assertEquals(listOf(0, 100, 300, 600), index.ranges(600, 20, 29, intArrayOf(102)).toList())
+    }
+
+    @Test
+    fun brokenSidecarIsIgnored() {
+        file.writeBytes(ByteArray(100))
+        assertNull(LogIndex.read(file))
+        LogIndex.sidecar(file).writeBytes(byteArrayOf(1, 2, 3, 4, 5))
+        assertNull(LogIndex.read(file))
+        // 最后一条不完整的索引被忽略
+        LogIndex.sidecar(file).delete()
+        LogIndex.append(LogIndex.sidecar(file), 0, 50, 0, 1, 1, 1L)
+        LogIndex.sidecar(file).appendBytes(ByteArray(20))
+        assertEquals(1, LogIndex.read(file)!!.size())
+    }
+
+    @Test
+    fun entriesAtSealMarksKeepRecordsOfUnsealedSlots() {
+        file.writeBytes(ByteArray(100))
+        val writer = LogIndexWriter().apply { activate(file) }
+        fun write(time: Long, seq: Long) {
+            writer.add(WriteAction("日志").apply { flag = 101; localTime = time })
+            writer.mark(seq)
+        }
+        write(10, 0)
+        // 这次写入跨越了暂存区1与2，其中的日志可能在暂存区1中
+        write(20, 2)
+        write(30, 3)
+        file.appendBytes(ByteArray(100))
+        writer.checkpoint(SealMark(file.name, 1, 200))
+        // 重复的位置与其他文件的位置被忽略
+        writer.checkpoint(SealMark(file.name, 1, 200))
+        writer.checkpoint(SealMark("other", 3, 300))
+        file.appendBytes(ByteArray(100))
+        writer.checkpoint(SealMark(file.name, 3, 300))
+        val index = LogIndex.read(file)!!
+        assertEquals(2, index.size())
+        assertEquals(listOf(0, 300), index.ranges(300, 20, 20, intArrayOf()).toList())
+        assertEquals(listOf(0, 100, 200, 300), index.ranges(300, 30, 30, intArrayOf()).toList())
+        assertEquals(listOf(0, 200), index.ranges(300, 10, 10, intArrayOf()).toList())
+    }
+
+    // 按默认配置经由FileWorker写入，期间不主动强制写入，返回写入的日志文件
+    private fun write(minutes: Int, perMinute: Int): File {
+        val config = LogConfig(File(root, "cache").absolutePath, File(root, "days").absolutePath, key.toByteArray(), key.toByteArray())
+        // 进程中只有一个LogProtocol，先结束其他测试可能留下的纯Java实现
+        val protocol = LogProtocol().apply { close() }
+        protocol.init(config.cachePath, config.logDirPath, config.mMaxFile.toInt(), key, key)
+        val worker = FileWorker(config)
+        val batch = ArrayList<WriteAction>()
+        for (m in 0 until minutes) {
+            for (i in 0 until perMinute) {
+                batch.add(WriteAction("第${m}分钟的日志$i").apply {
+                    flag = if (i % 50 == 0) 500 else 100 + i % 3
+                    localTime = m * 60_000L + i
+                    threadName = "main"
+                })
+                if (batch.size == config.mBatchCount) {
+                    worker.write(protocol, batch)
+                    batch.clear()
+                }
+            }
+        }
+        worker.write(protocol, batch)
+        protocol.close()
+        return LogSegment.list(File(config.logDirPath)).single().file
+    }
+
+    private fun query(file: File, begin: Long, end: Long, types: IntArray, isIndexed: Boolean): List<String> {
+        val parser = LogParserProtocol(file)
+        if (isIndexed) assertTrue(parser.useIndex(begin, end, types))
+        val out = arrayListOf<String>()
+        parser.scan({ type, time -> time in begin..end && (types.isEmpty() || types.contains(type)) }) { json, offset, length ->
+            out.add(String(json, offset, length))
+            true
+        }
+        return out
+    }
+
+    @Test
+    fun indexedQueryReadsOnlyMatchingChunks() {
+        val file = write(60, 2000)
+        val index = LogIndex.read(file)!!
+        assertTrue("索引条数：${index.size()}", index.size() >= 15)
+        val begin = 30 * 60_000L
+        val end = 31 * 60_000L - 1
+        val types = intArrayOf(500)
+        val expected = query(file, begin, end, types, false)
+        assertEquals(40, expected.size)
+        assertEquals(expected, query(file, begin, end, types, true))
+        // 只读取少数几条索引覆盖的内容，以及最后一条索引之后的内容
+        val ranges = index.ranges(file.length(), begin, end, types)
+        val bytes = (ranges.indices step 2).sumOf { ranges[it + 1] - ranges[it] }
+        assertTrue("读取$bytes/${file.length()}字节", bytes < file.length() / 8)
+
+        fun measure(name: String, isIndexed: Boolean) {
+            val nanos = (0 until 3).minOf {
+                val start = System.nanoTime()
+                query(file, begin, end, types, isIndexed)
+                System.nanoTime() - start
+            }
+            println("${name}：查询1分钟内的日志耗时${nanos / 1000}us，文件${file.length() / 1024}KB，索引${index.size()}条")
+        }
+        measure("完整扫描", false)
+        measure("按索引读取", true)
+    }
+}
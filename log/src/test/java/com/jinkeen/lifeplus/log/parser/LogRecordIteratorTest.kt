@@ -0,0 +1,134 @@
+package com.jinkeen.lifeplus.log.parser
+
+import com.jinkeen.lifeplus.log.nativ.JvmLoganProtocol
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.file.Files
+
+class LogRecordIteratorTest {
+
+    // 与测试资源secure.properties中的密钥相同
+    private val key = "0123456789012345"
+
+    private val root: File = Files.createTempDirectory("log_parser").toFile()
+    private val file = File(root, "log/1640275200000")
+
+    @After
+    fun clean() {
+        root.deleteRecursively()
+    }
+
+    private fun write(logs: List<String>, key: String = this.key, cache: String = "cache") {
+        val protocol = JvmLoganProtocol()
+        protocol.clogan_init(File(root, cache).absolutePath, file.parent, Int.MAX_VALUE, key, key)
+        protocol.clogan_open(file.name)
+        logs.forEachIndexed { i, log -> protocol.clogan_write(100 + i % 3, log, i.toLong(), "main", 1, 1) }
+        protocol.clogan_flush()
+        assertTrue(protocol.awaitSealed(10_000))
+    }
+
+    @Test
+    fun recordsSpanningChunksKeepOrder() {
+        // 每个数据块最多5KB，较长的日志与多字节字符会跨越数据块
+        val logs = (0 until 5000).map { if (it % 500 == 7) "长日志$it-" + "字".repeat(8 * 1024) else "Log content-$it，内容" }
+        write(logs)
+        val records = LogParserProtocol(file).records().asSequence().toList()
+        assertEquals(logs, records.map { it.content })
+        assertEquals((0 until 5000).map { it.toLong() }, records.map { it.time })
+        assertEquals(101, records[1].type)
+        assertEquals("main", records[1].threadName)
+        assertTrue(records[1].isMainThread)
+    }
+
+    @Test
+    fun matchesFullTextParse() {
+        write((0 until 2000).map { "Log content-$it" })
+        val lines = LogParserProtocol(file).process().split("\n").filter { it.isNotEmpty() }
+        assertEquals(lines, LogParserProtocol(file).records().asSequence().map { it.toJson() }.toList())
+    }
+
+    @Test
+    fun skipsBrokenChunks() {
+        write((0 until 2000).map { "Log content-$it" })
+        val total = LogParserProtocol(file).records().asSequence().count()
+        // 破坏文件中间的一个数据块，其余数据块仍可读取
+        RandomAccessFile(file, "rw").use {
+            it.seek(file.length() / 2)
+            it.write(ByteArray(64) { 0x5a })
+        }
+        val count = LogParserProtocol(file).records().asSequence().count()
+        assertTrue("剩余日志：$count/$total", count in 1 until total)
+    }
+
+    @Test
+    fun emptyOrMissingFile() {
+        assertFalse(LogParserProtocol(file).records().hasNext())
+        file.parentFile!!.mkdirs()
+        file.createNewFile()
+        assertFalse(LogParserProtocol(file).records().hasNext())
+        assertEquals("", LogParserProtocol(file).process())
+    }
+
+    @Test
+    fun decodesChunksWrittenUnderRotatedKeys() {
+        val old = "abcdefghijklmnop"
+        val new = "ponmlkjihgfedcba"
+        // 更换密钥前后写入同一个文件
+        write((0 until 1000).map { "old-$it" }, old, "cache-old")
+        write((0 until 1000).map { "new-$it" }, new, "cache-new")
+        val keys = LogKeyProvider { listOf(LogKey("2", new.toByteArray(), new.toByteArray()), LogKey("1", old.toByteArray(), old.toByteArray())) }
+        val expected = (0 until 1000).map { "old-$it" } + (0 until 1000).map { "new-$it" }
+        assertEquals(expected, LogParserProtocol(file, keys).records().asSequence().map { it.content }.toList())
+        assertEquals(expected, LogParserProtocol(file, keys, "1").records().asSequence().map { it.content }.toList())
+        // 缺少旧密钥时只能解析新密钥写入的日志
+        val current = LogKeyProvider { listOf(LogKey("2", new.toByteArray(), new.toByteArray())) }
+        assertEquals(expected.drop(1000), LogParserProtocol(file, current).records().asSequence().map { it.content }.toList())
+    }
+
+    @Test
+    fun parallelDecodeKeepsOrder() {
+        val logs = (0 until 5000).map { if (it % 500 == 7) "长日志$it-" + "字".repeat(8 * 1024) else "Log content-$it" }
+        write(logs)
+        for (parallelism in intArrayOf(2, 4)) {
+            val parser = LogParserProtocol(file).apply { this.parallelism = parallelism }
+            assertEquals(logs, parser.records().asSequence().map { it.content }.toList())
+            assertEquals(LogParserProtocol(file).process(), parser.process())
+        }
+    }
+
+    @Test
+    fun parallelDecodeThreadsAreBounded() {
+        write((0 until 30_000).map { "Log content-$it，内容" })
+        // 同时解析多个文件，并行度之和超过CPU核数
+        val readers = (0 until 3).map { LogParserProtocol(file).apply { parallelism = 8 }.records() }
+        val counts = IntArray(readers.size)
+        while (readers.any { it.hasNext() }) readers.forEachIndexed { i, it -> if (it.hasNext()) { it.next(); counts[i]++ } }
+        assertEquals(listOf(30_000, 30_000, 30_000), counts.toList())
+        val threads = Thread.getAllStackTraces().keys.count { it.name.startsWith("log_parser_") }
+        assertTrue("解析线程数：$threads", threads <= Runtime.getRuntime().availableProcessors())
+    }
+
+    // 不同线程数下的解码速度，按文件大小与解压后的大小分别计算
+    @Test
+    fun decodeThroughput() {
+        val log = "用户123在页面Home点击了按钮Submit，耗时45ms，请求参数：{id=9527, from=push}"
+        write((0 until 60_000).map { "$log-$it" })
+        LogParserProtocol(file).process()
+        for (parallelism in intArrayOf(1, 2, 4, 8)) {
+            val parser = LogParserProtocol(file).apply { this.parallelism = parallelism }
+            var text = ""
+            // 取三次中最快的一次
+            val nanos = (0 until 3).minOf {
+                val begin = System.nanoTime()
+                text = parser.process()
+                System.nanoTime() - begin
+            }
+            val decoded = text.toByteArray().size
+            println("${parallelism}线程解码：文件${file.length() * 1000 / nanos}MB/s，解压后${decoded * 1000L / nanos}MB/s（${Runtime.getRuntime().availableProcessors()}核）")
+            assertEquals(60_000, text.count { it == '\n' })
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.jinkeen.lifeplus.log.parser
+
+import com.google.gson.Gson
+import com.google.gson.JsonParser
+import com.jinkeen.lifeplus.log.nativ.JvmLoganProtocol
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.nio.file.Files
+
+class LogRecordScannerTest {
+
+    // 与测试资源secure.properties中的密钥相同
+    private val key = "0123456789012345"
+
+    private val root: File = Files.createTempDirectory("log_scanner").toFile()
+    private val file = File(root, "log/1640275200000")
+
+    @After
+    fun clean() {
+        root.deleteRecursively()
+    }
+
+    private fun matches(json: String, filter: LogRecordFilter): Boolean =
+        json.toByteArray().let { LogRecordScanner.matches(it, 0, it.size, filter) }
+
+    @Test
+    fun readsTypeAndTimeWithoutDecodingContent() {
+        var seen = 0 to 0L
+        val filter = LogRecordFilter { type, time -> seen = type to time; true }
+        assertTrue(matches("""{"c":"Log content-21660","f":101,"l":1640336274432,"n":"log","i":188,"m":false}""", filter))
+        assertEquals(101 to 1640336274432, seen)
+        // 内容中的转义与看起来像字段的文本
+        assertTrue(matches("""{"c":"a\"b\\\",\"f\":9,\"l\":1 {[字]}","f":102,"l":5,"n":"x","i":1,"m":true}""", filter))
+        assertEquals(102 to 5L, seen)
+        // 字段顺序不同、带有空格、负数
+        assertTrue(matches("""{ "m" : true , "l" : -3 , "c" : "x" , "f" : 7 }""", filter))
+        assertEquals(7 to -3L, seen)
+    }
+
+    @Test
+    fun rejectsMalformedRecords() {
+        val filter = LogRecordFilter { _, _ -> true }
+        assertFalse(matches("""{"c":"x","f":101}""", filter))
+        assertFalse(matches("""{"c":"x,"f":101,"l":1}""", filter))
+        assertFalse(matches("""{"c":"x","f":"101","l":1}""", filter))
+        assertFalse(matches("""not json""", filter))
+        assertFalse(matches("", filter))
+        assertFalse(matches("""{"c":"x","o":{"f":1},"f":1,"l":1}""", filter))
+    }
+
+    private fun write(count: Int, log: (Int) -> String) {
+        val protocol = JvmLoganProtocol()
+        protocol.clogan_init(File(root, "cache").absolutePath, file.parent, Int.MAX_VALUE, key, key)
+        protocol.clogan_open(file.name)
+        for (i in 0 until count) protocol.clogan_write(100 + i % 4, log(i), i.toLong(), "main", 1, 1)
+        protocol.clogan_flush()
+        assertTrue(protocol.awaitSealed(60_000))
+    }
+
+    @Test
+    fun scanMatchesRecordsFilter() {
+        write(5000) { if (it % 500 == 7) "长日志$it-" + "字".repeat(8 * 1024) else "Log content-$it" }
+        val filter = LogRecordFilter { type, time -> type == 101 && time in 1000L..3999L }
+        val out = arrayListOf<String>()
+        val count = LogParserProtocol(file).scan(filter) { json, offset, length -> out.add(String(json, offset, length)); true }
+        val expected = LogParserProtocol(file).records().asSequence().filter { filter.accept(it.type, it.time) }.map { it.toJson() }.toList()
+        assertEquals(750, count)
+        assertEquals(expected, out)
+        // 返回false时停止扫描
+        assertEquals(1, LogParserProtocol(file).scan(filter) { _, _, _ -> false })
+    }
+
+    // 100万条日志，筛选其中一种类型的一段时间，与逐行Gson解析的方式对比
+    @Test
+    fun scanThroughput() {
+        val count = 1_000_000
+        val log = "用户123在页面Home点击了按钮Submit，耗时45ms，请求参数：{id=9527, from=push}"
+        write(count) { "$log-$it" }
+        val begin = 200_000L
+        val end = 400_000L
+        val types = intArrayOf(101)
+
+        fun gson(): Int {
+            val gson = Gson()
+            val up = buildString {
+                LogParserProtocol(file).process().split("\n").forEach {
+                    if (it.isEmpty()) return@forEach
+                    val record = gson.fromJson(it, LogRecord::class.java)
+                    if (record.time in begin..end && types.contains(record.type)) append(it)
+                }
+            }
+            return up.length
+        }
+
+        fun scan(): Int {
+            val out = ByteArrayOutputStream()
+            LogParserProtocol(file).scan({ type, time -> time in begin..end && types.contains(type) }) { json, offset, length ->
+                out.write(json, offset, length)
+                true
+            }
+            return out.toString("UTF-8").length
+        }
+
+        assertEquals(gson(), scan())
+        fun measure(name: String, block: () -> Int) {
+            val nanos = (0 until 2).minOf {
+                val start = System.nanoTime()
+                block()
+                System.nanoTime() - start
+            }
+            println("${name}：${count}条日志筛选耗时${nanos / 1_000_000}ms，${count * 1_000_000_000L / nanos}条/秒")
+        }
+        measure("逐行Gson解析", ::gson)
+        measure("字节扫描", ::scan)
+        // 交给sink的是完整的原始JSON文本
+        val sample = ByteArrayOutputStream().also { out ->
+            LogParserProtocol(file).scan({ type, time -> time == begin && type == 100 }) { json, offset, length -> out.write(json, offset, length); true }
+        }.toString("UTF-8")
+        assertEquals(begin, JsonParser.parseString(sample).asJsonObject["l"].asLong)
+    }
+}